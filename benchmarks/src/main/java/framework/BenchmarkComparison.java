@@ -0,0 +1,152 @@
+package framework;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares a JMH run against the saved baseline and writes a markdown table of the differences, so a change which slows
+ * the framework down shows up in review.
+ *
+ * java -cp target/benchmarks.jar framework.BenchmarkComparison target/jmh-result.json baseline.json
+ *
+ * Benchmarks more than -Dthreshold percent (defaults to 10) slower than the baseline are marked as regressions and the
+ * command exits with status 1.  The report is printed and written to target/benchmark-comparison.md.  Run with
+ * -Dupdate=true to save the results as the new baseline instead.  Results are only comparable when the baseline was
+ * recorded on the same machine.
+ */
+public class BenchmarkComparison {
+
+    public static void main(String[] args) throws IOException {
+
+        if (args.length != 2) {
+            System.out.println("Usage: BenchmarkComparison <jmh-result.json> <baseline.json>");
+            System.exit(2);
+        }
+
+        Path resultsFile = Paths.get(args[0]);
+        Path baselineFile = Paths.get(args[1]);
+        double threshold = Double.parseDouble(System.getProperty("threshold", "10"));
+
+        Map<String, Score> results = readScores(resultsFile);
+
+        if (Boolean.parseBoolean(System.getProperty("update")) || !Files.exists(baselineFile)) {
+            Files.copy(resultsFile, baselineFile, StandardCopyOption.REPLACE_EXISTING);
+            System.out.println("Saved " + results.size() + " results as the baseline in " + baselineFile);
+            return;
+        }
+
+        Map<String, Score> baseline = readScores(baselineFile);
+        StringBuilder report = new StringBuilder();
+        int regressions = 0;
+
+        report.append("| Benchmark | Baseline | Current | Change | |\n");
+        report.append("|---|---:|---:|---:|---|\n");
+
+        for (Map.Entry<String, Score> entry : results.entrySet()) {
+
+            Score current = entry.getValue();
+            Score previous = baseline.get(entry.getKey());
+
+            if (previous == null) {
+                report.append(row(entry.getKey(), "-", current.toString(), "-", "new"));
+                continue;
+            }
+
+            // Lower is better for times, higher is better for throughput
+            double change = (current.value - previous.value) / previous.value * 100;
+            double slowdown = current.higherIsBetter ? -change : change;
+            String status = "";
+
+            // Only count it if the difference is bigger than the noise in both runs
+            if (slowdown > threshold && Math.abs(current.value - previous.value) > current.error + previous.error) {
+                status = "REGRESSION";
+                regressions++;
+            }
+            else if (slowdown < -threshold) {
+                status = "faster";
+            }
+
+            report.append(row(entry.getKey(), previous.toString(), current.toString(),
+                    String.format("%+.1f%%", change), status));
+        }
+
+        for (String name : baseline.keySet()) {
+            if (!results.containsKey(name)) {
+                report.append(row(name, baseline.get(name).toString(), "-", "-", "removed"));
+            }
+        }
+
+        report.append("\n").append(regressions).append(" regression(s) over ").append(threshold).append("%\n");
+
+        Path reportFile = Paths.get("target", "benchmark-comparison.md");
+        Files.createDirectories(reportFile.getParent());
+        Files.write(reportFile, report.toString().getBytes(StandardCharsets.UTF_8));
+        System.out.println(report);
+
+        if (regressions > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static String row(String name, String baseline, String current, String change, String status) {
+        return "| " + name + " | " + baseline + " | " + current + " | " + change + " | " + status + " |\n";
+    }
+
+    /**
+     * Read the primary score of each benchmark from a JMH JSON results file
+     */
+    private static Map<String, Score> readScores(Path file) throws IOException {
+
+        JSONArray runs = new JSONArray(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+        Map<String, Score> scores = new TreeMap<>();
+
+        for (int x = 0; x < runs.length(); x++) {
+            JSONObject run = runs.getJSONObject(x);
+            JSONObject metric = run.getJSONObject("primaryMetric");
+
+            String name = run.getString("benchmark").replace("framework.", "");
+            JSONObject params = run.optJSONObject("params");
+
+            if (params != null) {
+                name += new TreeMap<>(params.toMap());
+            }
+
+            // Error is NaN when there weren't enough iterations to work it out
+            double error = metric.optDouble("scoreError", 0);
+
+            scores.put(name, new Score(metric.getDouble("score"), Double.isNaN(error) ? 0 : error,
+                    metric.getString("scoreUnit"), "thrpt".equals(run.getString("mode"))));
+        }
+
+        return scores;
+    }
+
+    private static class Score {
+
+        private final double value;
+        private final double error;
+        private final String unit;
+        private final boolean higherIsBetter;
+
+        private Score(double value, double error, String unit, boolean higherIsBetter) {
+            this.value = value;
+            this.error = error;
+            this.unit = unit;
+            this.higherIsBetter = higherIsBetter;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.3f +- %.3f %s", value, error, unit);
+        }
+    }
+}
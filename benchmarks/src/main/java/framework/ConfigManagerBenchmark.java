@@ -0,0 +1,56 @@
+package framework;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of getting config values, which page objects and helpers do constantly, and of loading the config files
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConfigManagerBenchmark {
+
+    @Setup
+    public void setup() {
+        System.setProperty("framework.config", "test");
+        ConfigManager.get();
+    }
+
+    @Benchmark
+    public String lookup() {
+        return ConfigManager.get().getBaseURL();
+    }
+
+    @Benchmark
+    public Object typedLookup() {
+        return ConfigManager.get().getScreenshotPath();
+    }
+
+    /**
+     * Old style of getting config, copying the current snapshot each time
+     */
+    @Benchmark
+    public String construction() {
+        return new ConfigManager().getBaseURL();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public ConfigManager reload() {
+        return ConfigManager.reload();
+    }
+}
@@ -0,0 +1,162 @@
+package framework;
+
+import framework.enums.SupportedBrowsers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openqa.selenium.By;
+import org.openqa.selenium.ImmutableCapabilities;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.remote.Command;
+import org.openqa.selenium.remote.CommandExecutor;
+import org.openqa.selenium.remote.ErrorCodes;
+import org.openqa.selenium.remote.RemoteWebDriver;
+import org.openqa.selenium.remote.Response;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead the framework adds to each WebDriver command, measured against a stub driver which answers every command
+ * straight away without a browser
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DriverWrapperBenchmark {
+
+    private static final By USERNAME = By.id("username");
+    private static final By PASSWORD = By.id("password");
+    private static final By LOGIN_BUTTON = By.cssSelector("button[type='submit']");
+    private static final By MESSAGE = By.id("flash");
+
+    private RemoteWebDriver remoteDriver;
+    private DriverWrapper driver;
+
+    @Setup
+    public void setup() {
+        remoteDriver = new RemoteWebDriver(new StubCommandExecutor(), new ImmutableCapabilities());
+        CommandMetrics.instrument(remoteDriver);
+        driver = new DriverWrapper(remoteDriver, SupportedBrowsers.CHROME);
+    }
+
+    /**
+     * Selenium on its own, to compare the wrapper against
+     */
+    @Benchmark
+    public String rawGetTitle() {
+        return remoteDriver.getTitle();
+    }
+
+    @Benchmark
+    public String getTitle() {
+        return driver.getTitle();
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Dframework.commandMetrics=true")
+    public String getTitleWithMetrics() {
+        return driver.getTitle();
+    }
+
+    @Benchmark
+    public WebElement findElementCached() {
+        return driver.findElement(USERNAME);
+    }
+
+    @Benchmark
+    public List<WebElement> findElements() {
+        return driver.findElements(MESSAGE);
+    }
+
+    @Benchmark
+    public void clickOn() {
+        driver.clickOn(LOGIN_BUTTON);
+    }
+
+    /**
+     * Login form the old way, a command for every find, clear, sendKeys, click and getText
+     */
+    @Benchmark
+    public void loginUnbatched(Blackhole blackhole) {
+        WebElement username = remoteDriver.findElement(USERNAME);
+        username.clear();
+        username.sendKeys("tomsmith");
+
+        WebElement password = remoteDriver.findElement(PASSWORD);
+        password.clear();
+        password.sendKeys("SuperSecretPassword!");
+
+        remoteDriver.findElement(LOGIN_BUTTON).click();
+        blackhole.consume(remoteDriver.findElement(MESSAGE).getText());
+    }
+
+    @Benchmark
+    public CommandBatch.Results loginBatched() {
+        return driver.batch()
+                .setValue(USERNAME, "tomsmith")
+                .setValue(PASSWORD, "SuperSecretPassword!")
+                .click(LOGIN_BUTTON)
+                .readText("message", MESSAGE)
+                .execute();
+    }
+
+    /**
+     * Answers every command with a canned response, as a browser on the other end of a very fast connection would
+     */
+    private static class StubCommandExecutor implements CommandExecutor {
+
+        private static final String ELEMENT_KEY = "element-6066-11e4-a52e-4f735466cecf";
+
+        @Override
+        public Response execute(Command command) {
+
+            Response response = new Response();
+            response.setSessionId("stub");
+            response.setStatus(ErrorCodes.SUCCESS);
+            response.setState("success");
+            response.setValue(valueFor(command));
+
+            return response;
+        }
+
+        private Object valueFor(Command command) {
+
+            switch (command.getName()) {
+                case "newSession":
+                    Map<String, Object> capabilities = new HashMap<>();
+                    capabilities.put("browserName", "chrome");
+                    return capabilities;
+                case "findElement":
+                    return Collections.singletonMap(ELEMENT_KEY, "element-1");
+                case "findElements":
+                    return Collections.singletonList(Collections.singletonMap(ELEMENT_KEY, "element-1"));
+                case "getTitle":
+                    return "The Internet";
+                case "getCurrentUrl":
+                    return "https://the-internet.herokuapp.com/secure";
+                case "getElementText":
+                    return "You logged into a secure area!";
+                case "executeScript":
+                    return Collections.singletonMap("results",
+                            Collections.singletonMap("message", "You logged into a secure area!"));
+                default:
+                    return null;
+            }
+        }
+    }
+}
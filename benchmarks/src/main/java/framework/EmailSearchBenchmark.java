@@ -0,0 +1,141 @@
+package framework;
+
+import com.icegreen.greenmail.user.GreenMailUser;
+import com.icegreen.greenmail.util.DummySSLSocketFactory;
+import com.icegreen.greenmail.util.GreenMail;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import java.security.Security;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time for MailboxWatcher to find an email, against an IMAP server in the same JVM.  The inbox is filled with other
+ * emails first so the server side search has something to look through.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmailSearchBenchmark {
+
+    private static final String SUBJECT = "Forgot Password from the-internet";
+    private static final int OTHER_EMAILS = 500;
+
+    private GreenMail greenMail;
+    private GreenMailUser user;
+    private MailboxWatcher mailbox;
+    private Session session;
+    private int emailCount;
+
+    @Setup
+    public void setup() throws Exception {
+
+        // MailboxWatcher always connects over SSL, so trust the test server's self signed certificate
+        Security.setProperty("ssl.SocketFactory.provider", DummySSLSocketFactory.class.getName());
+
+        greenMail = new GreenMail(ServerSetupTest.IMAPS);
+        greenMail.start();
+        user = greenMail.setUser("bench@localhost", "bench", "password");
+        session = Session.getInstance(new Properties());
+
+        for (int x = 0; x < OTHER_EMAILS; x++) {
+            user.deliver(createEmail("someone+" + x + "@localhost", "Welcome"));
+        }
+
+        mailbox = MailboxWatcher.forInbox("localhost", ServerSetupTest.IMAPS.getPort(), "bench", "password");
+    }
+
+    @TearDown
+    public void tearDown() {
+        mailbox.close();
+        greenMail.stop();
+    }
+
+    private MimeMessage createEmail(String to, String subject) throws MessagingException {
+
+        MimeMessage email = new MimeMessage(session);
+        email.setFrom(new InternetAddress("no-reply@the-internet.herokuapp.com"));
+        email.setRecipient(Message.RecipientType.TO, new InternetAddress(to));
+        email.setSubject(subject);
+        email.setText("Reset your password");
+
+        return email;
+    }
+
+    /**
+     * Email for searchExisting(), delivered before each invocation is measured.  Kept apart from the benchmark's own
+     * state so waitForNew() doesn't have an extra email delivered ahead of every invocation too.
+     */
+    @State(Scope.Thread)
+    public static class DeliveredEmail {
+
+        private String recipient;
+
+        @Setup(Level.Invocation)
+        public void deliver(EmailSearchBenchmark benchmark) throws Exception {
+            recipient = "bench+" + benchmark.emailCount++ + "@localhost";
+            benchmark.user.deliver(benchmark.createEmail(recipient, SUBJECT));
+        }
+    }
+
+    /**
+     * Email has already arrived when the test starts waiting, so it's found by searching the server
+     */
+    @Benchmark
+    public Message searchExisting(DeliveredEmail email) {
+        return waitFor(email.recipient);
+    }
+
+    /**
+     * Email arrives after the test starts waiting, so it's found once the server tells us about it or the next poll
+     */
+    @Benchmark
+    public Message waitForNew() throws Exception {
+
+        String newRecipient = "bench+new" + emailCount++ + "@localhost";
+        MimeMessage email = createEmail(newRecipient, SUBJECT);
+
+        Thread sender = new Thread(() -> {
+            try {
+                user.deliver(email);
+            }
+            catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+
+        sender.start();
+        return waitFor(newRecipient);
+    }
+
+    private Message waitFor(String to) {
+
+        Message email = mailbox.waitForEmail(to, SUBJECT, 10000);
+
+        if (email == null) {
+            throw new IllegalStateException("Email for " + to + " was not found");
+        }
+
+        return email;
+    }
+}
@@ -0,0 +1,115 @@
+package framework;
+
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full request and response cycle through RestAPIHelper against a server in the same JVM, so what's measured is the
+ * framework and HttpClient rather than the network
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RestAPIBenchmark {
+
+    private static final byte[] JSON_BODY = ("{\"users\": [" + String.join(",",
+            Collections.nCopies(50, "{\"name\": \"tomsmith\", \"email\": \"tom@example.com\"}")) + "]}")
+            .getBytes(StandardCharsets.UTF_8);
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private String baseURL;
+
+    @Setup
+    public void setup() throws IOException {
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+
+        server.createContext("/users", exchange -> {
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, JSON_BODY.length);
+
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(JSON_BODY);
+            }
+        });
+
+        server.createContext("/echo", exchange -> {
+            byte[] request = readAll(exchange.getRequestBody());
+            exchange.sendResponseHeaders(201, request.length);
+
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(request);
+            }
+        });
+
+        executor = Executors.newFixedThreadPool(8);
+        server.setExecutor(executor);
+        server.start();
+
+        baseURL = "http://localhost:" + server.getAddress().getPort();
+    }
+
+    private static byte[] readAll(InputStream input) throws IOException {
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+
+        while ((read = input.read(buffer)) != -1) {
+            output.write(buffer, 0, read);
+        }
+
+        return output.toByteArray();
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public RestResponse get() {
+        return RestAPIHelper.execute(RestRequest.get(baseURL + "/users").build());
+    }
+
+    @Benchmark
+    public RestResponse post() {
+        return RestAPIHelper.execute(RestRequest.post(baseURL + "/echo")
+                .header("Content-Type", "application/json")
+                .body("{\"name\": \"tomsmith\"}")
+                .build());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public RestResponse getParallel() {
+        return RestAPIHelper.execute(RestRequest.get(baseURL + "/users").build());
+    }
+}
@@ -0,0 +1,67 @@
+package framework;
+
+import models.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of generating random test data, on one thread and on several at once as tests do when run in parallel
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TestDataBenchmark {
+
+    @Setup
+    public void setup() {
+        System.setProperty("framework.config", "test");
+        ConfigManager.get();
+    }
+
+    @Benchmark
+    public String randomString() {
+        return Util.getRandomStringOfLength(8);
+    }
+
+    @Benchmark
+    public long randomNumber() {
+        return Util.getRandomNumberOfLength(11);
+    }
+
+    @Benchmark
+    public String email() {
+        return Util.getValidEmail();
+    }
+
+    @Benchmark
+    public User randomUser() {
+        return User.createNewRandomUser();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public User randomUserParallel() {
+        return User.createNewRandomUser();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<User> hundredUsers() {
+        return TestDataGenerator.current().users(100);
+    }
+}
@@ -0,0 +1,169 @@
+package framework;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.Dimension;
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.Point;
+import org.openqa.selenium.Rectangle;
+import org.openqa.selenium.SearchContext;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.WrapsElement;
+
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Element handed out by the ElementCache.  If the underlying handle has gone stale, because the page re-rendered the
+ * element or navigated away, it's found again using the original locator and the command is retried once.  Selenium
+ * unwraps it automatically when it's passed to executeScript.
+ */
+class CachedElement implements WebElement, WrapsElement {
+
+    private final ElementCache cache;
+    private final By locator;
+    private volatile WebElement element;
+
+    CachedElement(ElementCache cache, By locator, WebElement element) {
+        this.cache = cache;
+        this.locator = locator;
+        this.element = element;
+    }
+
+    private <T> T call(Function<WebElement, T> command) {
+
+        WebElement current = element;
+
+        try {
+            return command.apply(current);
+        }
+        catch (StaleElementReferenceException e) {
+            // Another thread may already have found it again
+            if (element == current) {
+                element = cache.refind(locator);
+            }
+
+            return command.apply(element);
+        }
+    }
+
+    private void run(Consumer<WebElement> command) {
+        call(element -> {
+            command.accept(element);
+            return null;
+        });
+    }
+
+    @Override
+    public WebElement getWrappedElement() {
+        return element;
+    }
+
+    // Either may load a new page, and nothing else would tell the cache its elements are now from the old one
+
+    @Override
+    public void click() {
+        run(WebElement::click);
+        cache.clear();
+    }
+
+    @Override
+    public void submit() {
+        run(WebElement::submit);
+        cache.clear();
+    }
+
+    @Override
+    public void sendKeys(CharSequence... keysToSend) { run(element -> element.sendKeys(keysToSend)); }
+
+    @Override
+    public void clear() { run(WebElement::clear); }
+
+    @Override
+    public String getTagName() { return call(WebElement::getTagName); }
+
+    @Override
+    public String getDomProperty(String name) { return call(element -> element.getDomProperty(name)); }
+
+    @Override
+    public String getDomAttribute(String name) { return call(element -> element.getDomAttribute(name)); }
+
+    @Override
+    public String getAttribute(String name) { return call(element -> element.getAttribute(name)); }
+
+    @Override
+    public String getAriaRole() { return call(WebElement::getAriaRole); }
+
+    @Override
+    public String getAccessibleName() { return call(WebElement::getAccessibleName); }
+
+    @Override
+    public boolean isSelected() { return call(WebElement::isSelected); }
+
+    @Override
+    public boolean isEnabled() { return call(WebElement::isEnabled); }
+
+    @Override
+    public String getText() { return call(WebElement::getText); }
+
+    @Override
+    public List<WebElement> findElements(By by) { return call(element -> element.findElements(by)); }
+
+    @Override
+    public WebElement findElement(By by) { return call(element -> element.findElement(by)); }
+
+    @Override
+    public SearchContext getShadowRoot() { return call(WebElement::getShadowRoot); }
+
+    @Override
+    public boolean isDisplayed() { return call(WebElement::isDisplayed); }
+
+    @Override
+    public Point getLocation() { return call(WebElement::getLocation); }
+
+    @Override
+    public Dimension getSize() { return call(WebElement::getSize); }
+
+    @Override
+    public Rectangle getRect() { return call(WebElement::getRect); }
+
+    @Override
+    public String getCssValue(String propertyName) { return call(element -> element.getCssValue(propertyName)); }
+
+    @Override
+    public <X> X getScreenshotAs(OutputType<X> target) throws WebDriverException {
+        return call(element -> element.getScreenshotAs(target));
+    }
+
+    /**
+     * Cached elements are equal if they wrap the same browser element, as with the elements Selenium hands out
+     */
+    @Override
+    public boolean equals(Object other) {
+
+        if (this == other) {
+            return true;
+        }
+
+        if (!(other instanceof WebElement)) {
+            return false;
+        }
+
+        WebElement otherElement = (other instanceof WrapsElement) ? ((WrapsElement) other).getWrappedElement()
+                : (WebElement) other;
+
+        return element.equals(otherElement);
+    }
+
+    @Override
+    public int hashCode() {
+        return element.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "Cached element " + locator;
+    }
+}
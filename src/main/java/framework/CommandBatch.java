@@ -0,0 +1,321 @@
+package framework;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.remote.RemoteWebDriver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records a sequence of reads and simple writes and sends them to the browser in a single executeScript call, rather
+ * than a round trip for every find, clear, sendKeys and getText.  Create one with DriverWrapper.batch().
+ *
+ * CommandBatch.Results results = driver.batch()
+ *         .setValue(usernameField, "tomsmith")
+ *         .setValue(passwordField, "SuperSecretPassword!")
+ *         .click(loginButton)
+ *         .readText("message", messageBox)
+ *         .execute();
+ *
+ * Values are set directly on the element and input and change events are fired, which is enough for ordinary forms,
+ * but no key events are sent, so pages which validate or mask input as it's typed may not see the value.  Where real
+ * keyboard or mouse events are needed, use sendKeys() and click().  These are run as normal WebDriver
+ * commands at that point in the sequence, with everything before and after them still batched.  Steps with locators
+ * which can't be resolved in JavaScript, i.e. link text, are also run as normal commands.
+ *
+ * If an element to be written to can't be found a NoSuchElementException is thrown, and any steps already run stay
+ * done.  Reads of missing elements return null rather than failing, so a batch can check for things which may not be
+ * on the page.
+ */
+public class CommandBatch {
+
+    private static final String BATCH_SCRIPT = JsLocator.FIND_FUNCTIONS +
+            // Close to WebElement.getText(), which is empty for hidden elements and gives trimmed lines with no nbsp
+            "function visibleText(element) {" +
+            "  if (!element.getClientRects().length || getComputedStyle(element).visibility === 'hidden') { return ''; }" +
+            "  return element.innerText.replace(/\\u00a0/g, ' ').split('\\n')" +
+            "      .map(function(line) { return line.trim(); })" +
+            "      .filter(function(line) { return line.length > 0; }).join('\\n');" +
+            "}" +
+            "var steps = arguments[0];" +
+            "var results = {};" +
+            "for (var i = 0; i < steps.length; i++) {" +
+            "  var step = steps[i];" +
+            "  if (step.type === 'title') { results[step.key] = document.title; continue; }" +
+            "  if (step.type === 'url') { results[step.key] = window.location.href; continue; }" +
+            "  if (step.type === 'count') { results[step.key] = findAll(step.using, step.value).length; continue; }" +
+            "  var element = find(step.using, step.value);" +
+            "  if (step.type === 'text') { results[step.key] = element ? visibleText(element) : null; continue; }" +
+            "  if (step.type === 'attribute') { results[step.key] = element ? element.getAttribute(step.arg) : null; continue; }" +
+            "  if (!element) { return {error: 'Unable to find element ' + step.using + ': ' + step.value}; }" +
+            // Use the setter from the element's prototype so frameworks which track the value themselves see the change
+            "  var descriptor = Object.getOwnPropertyDescriptor(Object.getPrototypeOf(element), 'value');" +
+            "  if (descriptor && descriptor.set) { descriptor.set.call(element, step.arg); } else { element.value = step.arg; }" +
+            "  element.dispatchEvent(new Event('input', {bubbles: true}));" +
+            "  element.dispatchEvent(new Event('change', {bubbles: true}));" +
+            "}" +
+            "return {results: results};";
+
+    private final DriverWrapper wrapper;
+    private final RemoteWebDriver driver;
+    private final List<Step> steps = new ArrayList<>();
+
+    CommandBatch(DriverWrapper wrapper, RemoteWebDriver driver) {
+        this.wrapper = wrapper;
+        this.driver = driver;
+    }
+
+    /**
+     * Set the value of an input field, firing input and change events
+     */
+    public CommandBatch setValue(By locator, String value) {
+        return add(new Step(stepType.VALUE, null, locator, value));
+    }
+
+    /**
+     * Clear an input field, firing input and change events
+     */
+    public CommandBatch clear(By locator) {
+        return add(new Step(stepType.VALUE, null, locator, ""));
+    }
+
+    /**
+     * Read the visible text of an element, or null if it isn't on the page.  The text comes from the browser's
+     * innerText, tidied up to match getText() for ordinary content: hidden elements give an empty string, each line is
+     * trimmed, blank lines are dropped and non-breaking spaces become normal spaces.  It can still differ from getText()
+     * in edge cases, such as elements with zero opacity or size which getText() treats as hidden, so use getText()
+     * where the exact WebDriver result matters.
+     * @param key Name to get the result with
+     */
+    public CommandBatch readText(String key, By locator) {
+        return add(new Step(stepType.TEXT, key, locator, null));
+    }
+
+    /**
+     * Read an attribute of an element, or null if the element isn't on the page
+     * @param key Name to get the result with
+     */
+    public CommandBatch readAttribute(String key, By locator, String attribute) {
+        return add(new Step(stepType.ATTRIBUTE, key, locator, attribute));
+    }
+
+    /**
+     * Count the elements matching a locator
+     * @param key Name to get the result with
+     */
+    public CommandBatch count(String key, By locator) {
+        return add(new Step(stepType.COUNT, key, locator, null));
+    }
+
+    /**
+     * @param key Name to get the result with
+     */
+    public CommandBatch readTitle(String key) {
+        return add(new Step(stepType.TITLE, key, null, null));
+    }
+
+    /**
+     * @param key Name to get the result with
+     */
+    public CommandBatch readUrl(String key) {
+        return add(new Step(stepType.URL, key, null, null));
+    }
+
+    /**
+     * Click an element with a real mouse click, as a separate WebDriver command
+     */
+    public CommandBatch click(By locator) {
+        return add(new Step(stepType.CLICK, null, locator, null));
+    }
+
+    /**
+     * Type into an element with real key presses, as a separate WebDriver command
+     */
+    public CommandBatch sendKeys(By locator, String keys) {
+        return add(new Step(stepType.KEYS, null, locator, keys));
+    }
+
+    private CommandBatch add(Step step) {
+        steps.add(step);
+        return this;
+    }
+
+    /**
+     * Run the steps in order, batching together everything which doesn't need a separate WebDriver command
+     * @return Results of all the reads, by key
+     */
+    public Results execute() {
+
+        Map<String, Object> results = new LinkedHashMap<>();
+        List<Step> batched = new ArrayList<>();
+
+        for (Step step : steps) {
+            if (step.canBatch()) {
+                batched.add(step);
+            }
+            else {
+                runScript(batched, results);
+                batched.clear();
+                runNative(step, results);
+            }
+        }
+
+        runScript(batched, results);
+        return new Results(results);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void runScript(List<Step> batched, Map<String, Object> results) {
+
+        if (batched.isEmpty()) {
+            return;
+        }
+
+        List<Map<String, Object>> scriptSteps = new ArrayList<>();
+
+        for (Step step : batched) {
+            scriptSteps.add(step.toScriptArg());
+        }
+
+        Map<String, Object> response = (Map<String, Object>) driver.executeScript(BATCH_SCRIPT, scriptSteps);
+
+        if (response.containsKey("error")) {
+            throw new NoSuchElementException(String.valueOf(response.get("error")));
+        }
+
+        results.putAll((Map<String, Object>) response.get("results"));
+    }
+
+    private void runNative(Step step, Map<String, Object> results) {
+
+        switch (step.type) {
+            case CLICK:
+                wrapper.clickOn(step.locator);
+                break;
+            case KEYS:
+                wrapper.findElement(step.locator).sendKeys(step.arg);
+                break;
+            case VALUE:
+                WebElement field = wrapper.findElement(step.locator);
+                field.clear();
+                field.sendKeys(step.arg);
+                break;
+            case TEXT:
+                List<WebElement> textElements = wrapper.findElements(step.locator);
+                results.put(step.key, textElements.isEmpty() ? null : textElements.get(0).getText());
+                break;
+            case ATTRIBUTE:
+                List<WebElement> elements = wrapper.findElements(step.locator);
+                results.put(step.key, elements.isEmpty() ? null : elements.get(0).getAttribute(step.arg));
+                break;
+            case COUNT:
+                results.put(step.key, (long) wrapper.findElements(step.locator).size());
+                break;
+            default:
+                throw new IllegalStateException("Unable to run " + step.type + " as a separate command");
+        }
+    }
+
+    /**
+     * Results of the reads in a batch
+     */
+    public static class Results {
+
+        private final Map<String, Object> values;
+
+        private Results(Map<String, Object> values) {
+            this.values = Collections.unmodifiableMap(values);
+        }
+
+        public Object get(String key) {
+            return values.get(key);
+        }
+
+        /**
+         * @return The value as a string, or null if the element wasn't on the page
+         */
+        public String getString(String key) {
+            Object value = values.get(key);
+            return value == null ? null : value.toString();
+        }
+
+        /**
+         * @return Result of a count() step
+         */
+        public int getCount(String key) {
+            Object value = values.get(key);
+
+            if (!(value instanceof Number)) {
+                throw new IllegalStateException("No count recorded for " + key);
+            }
+
+            return ((Number) value).intValue();
+        }
+
+        public Map<String, Object> asMap() {
+            return values;
+        }
+
+        @Override
+        public String toString() {
+            return values.toString();
+        }
+    }
+
+    private static class Step {
+
+        private final stepType type;
+        private final String key;
+        private final By locator;
+        private final String arg;
+
+        private Step(stepType type, String key, By locator, String arg) {
+            this.type = type;
+            this.key = key;
+            this.locator = locator;
+            this.arg = arg;
+        }
+
+        private boolean canBatch() {
+            return type.scriptName != null && (locator == null || JsLocator.isSupported(locator));
+        }
+
+        private Map<String, Object> toScriptArg() {
+            Map<String, Object> scriptArg = new HashMap<>();
+            scriptArg.put("type", type.scriptName);
+            scriptArg.put("key", key);
+            scriptArg.put("arg", arg);
+
+            if (locator != null) {
+                scriptArg.put("using", JsLocator.using(locator));
+                scriptArg.put("value", JsLocator.value(locator));
+            }
+
+            return scriptArg;
+        }
+    }
+
+    private enum stepType {
+        VALUE ("value"),
+        TEXT ("text"),
+        ATTRIBUTE ("attribute"),
+        COUNT ("count"),
+        TITLE ("title"),
+        URL ("url"),
+        CLICK (null),
+        KEYS (null);
+
+        // Name of the step in the batch script, or null if it always has to be run as a separate command
+        private final String scriptName;
+
+        stepType(String scriptName) {
+            this.scriptName = scriptName;
+        }
+    }
+}
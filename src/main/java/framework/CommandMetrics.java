@@ -0,0 +1,336 @@
+package framework;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.json.JSONObject;
+import org.openqa.selenium.remote.Command;
+import org.openqa.selenium.remote.CommandExecutor;
+import org.openqa.selenium.remote.RemoteWebDriver;
+import org.openqa.selenium.remote.Response;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records how long every WebDriver command takes, so we can see where a slow test spends its time.  Enabled with the
+ * framework.commandMetrics system property.
+ *
+ * Each driver's command executor is wrapped, so every command sent to the browser is timed whichever part of the
+ * framework sent it, i.e. findElement, get, executeScript or screenshot.  Time spent in Waits is recorded as a wait
+ * command as well as the commands it sends.  Latencies are kept in histograms per command, per command on each page
+ * object and per command in each test.  Recording a command takes well under a microsecond.
+ *
+ * CommandMetricsListener tells us which test is running and writes command-metrics.json and command-metrics.prom
+ * (Prometheus text format) to framework.metricsFolder (defaults to target) at the end of the run.
+ */
+public class CommandMetrics {
+
+    private static final String WAIT_COMMAND = "wait";
+
+    private static final String NONE = "none";
+    private static final double[] REPORTED_PERCENTILES = {50, 90, 99};
+
+    private static final boolean enabled = Boolean.parseBoolean(System.getProperty("framework.commandMetrics"));
+
+    private static final ThreadLocal<String> currentTest = new ThreadLocal<>();
+
+    private static final Map<String, Histogram> byCommand = new ConcurrentHashMap<>();
+    private static final Map<String, Map<String, Histogram>> byPage = new ConcurrentHashMap<>();
+    private static final Map<String, Map<String, Histogram>> byTest = new ConcurrentHashMap<>();
+
+    private CommandMetrics() {
+
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Start timing the driver's commands, if metrics are enabled
+     */
+    static void instrument(RemoteWebDriver driver) {
+
+        if (!enabled) {
+            return;
+        }
+
+        // There's no public way to change the executor once the driver's started, but it's the only place every
+        // command passes through
+        try {
+            Method setExecutor = RemoteWebDriver.class.getDeclaredMethod("setCommandExecutor", CommandExecutor.class);
+            setExecutor.setAccessible(true);
+            setExecutor.invoke(driver, new TimedCommandExecutor(driver.getCommandExecutor()));
+        }
+        catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException | RuntimeException e) {
+            System.out.println("Unable to record command metrics for this driver: " + e);
+        }
+    }
+
+    /**
+     * Record which page object the driver is on, so its commands can be attributed to it
+     */
+    static void setPage(RemoteWebDriver driver, String page) {
+
+        CommandExecutor executor = driver.getCommandExecutor();
+
+        if (executor instanceof TimedCommandExecutor) {
+            ((TimedCommandExecutor) executor).page = page;
+        }
+    }
+
+    /**
+     * Record the time spent in a wait, from when it started until now
+     */
+    static void recordWait(RemoteWebDriver driver, long startNanos) {
+
+        CommandExecutor executor = driver.getCommandExecutor();
+
+        if (executor instanceof TimedCommandExecutor) {
+            record(WAIT_COMMAND, ((TimedCommandExecutor) executor).page, System.nanoTime() - startNanos);
+        }
+    }
+
+    private static void record(String command, String page, long nanos) {
+
+        String test = currentTest.get();
+        long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+
+        histogram(byCommand, command).recordValue(micros);
+        histogram(group(byPage, page), command).recordValue(micros);
+        histogram(group(byTest, test), command).recordValue(micros);
+    }
+
+    private static Map<String, Histogram> group(Map<String, Map<String, Histogram>> groups, String name) {
+
+        String key = name == null ? NONE : name;
+        Map<String, Histogram> group = groups.get(key);
+
+        // Check first, as computeIfAbsent locks even when the entry is already there
+        if (group == null) {
+            group = groups.computeIfAbsent(key, k -> new ConcurrentHashMap<>());
+        }
+
+        return group;
+    }
+
+    private static Histogram histogram(Map<String, Histogram> histograms, String command) {
+
+        Histogram histogram = histograms.get(command);
+
+        if (histogram == null) {
+            histogram = histograms.computeIfAbsent(command, k -> new ConcurrentHistogram(2));
+        }
+
+        return histogram;
+    }
+
+    /**
+     * Attribute commands sent from this thread to a test, until endTest() is called.  Anything recorded for an earlier
+     * attempt at the same invocation is thrown away.
+     *
+     * @param invocation Name of the test including its parameters
+     */
+    public static void startTest(String invocation) {
+        byTest.remove(invocation);
+        currentTest.set(invocation);
+    }
+
+    public static void endTest() {
+        currentTest.remove();
+    }
+
+    /**
+     * @return Number of commands, including waits, recorded for a test invocation
+     */
+    public static long getCommandCount(String invocation) {
+
+        long count = 0;
+
+        for (Histogram histogram : byTest.getOrDefault(invocation, Collections.emptyMap()).values()) {
+            count += histogram.getTotalCount();
+        }
+
+        return count;
+    }
+
+    /**
+     * @return Total time spent on commands by a test invocation, in milliseconds.  Commands sent during waits are
+     * counted in both, so this can be more than the time the test took.
+     */
+    public static double getCommandMillis(String invocation) {
+
+        double millis = 0;
+
+        for (Histogram histogram : byTest.getOrDefault(invocation, Collections.emptyMap()).values()) {
+            millis += histogram.getMean() * histogram.getTotalCount() / 1000.0;
+        }
+
+        return millis;
+    }
+
+    public static JSONObject toJSON() {
+
+        JSONObject json = new JSONObject();
+        JSONObject commands = new JSONObject();
+
+        for (Map.Entry<String, Histogram> command : new TreeMap<>(byCommand).entrySet()) {
+            commands.put(command.getKey(), latencyToJSON(command.getValue()));
+        }
+
+        json.put("commands", commands);
+        json.put("pages", groupToJSON(byPage));
+        json.put("tests", groupToJSON(byTest));
+
+        return json;
+    }
+
+    private static JSONObject groupToJSON(Map<String, Map<String, Histogram>> group) {
+
+        JSONObject json = new JSONObject();
+
+        for (Map.Entry<String, Map<String, Histogram>> entry : new TreeMap<>(group).entrySet()) {
+            JSONObject commands = new JSONObject();
+
+            for (Map.Entry<String, Histogram> command : new TreeMap<>(entry.getValue()).entrySet()) {
+                commands.put(command.getKey(), latencyToJSON(command.getValue()));
+            }
+
+            json.put(entry.getKey(), commands);
+        }
+
+        return json;
+    }
+
+    private static JSONObject latencyToJSON(Histogram histogram) {
+
+        JSONObject json = new JSONObject();
+        json.put("count", histogram.getTotalCount());
+
+        if (histogram.getTotalCount() == 0) {
+            return json;
+        }
+
+        json.put("meanMillis", histogram.getMean() / 1000.0);
+
+        for (double percentile : REPORTED_PERCENTILES) {
+            json.put("p" + (int) percentile + "Millis", histogram.getValueAtPercentile(percentile) / 1000.0);
+        }
+
+        json.put("maxMillis", histogram.getMaxValue() / 1000.0);
+
+        return json;
+    }
+
+    /**
+     * @return The metrics in Prometheus text format, as summaries in seconds
+     */
+    public static String toPrometheus() {
+
+        StringBuilder text = new StringBuilder();
+
+        Map<String, Map<String, Histogram>> commands = new TreeMap<>();
+        commands.put(NONE, byCommand);
+
+        appendSummary(text, "framework_command_duration_seconds", "WebDriver command latency", null, commands);
+        appendSummary(text, "framework_page_command_duration_seconds", "WebDriver command latency per page object", "page", byPage);
+        appendSummary(text, "framework_test_command_duration_seconds", "WebDriver command latency per test", "test", byTest);
+
+        return text.toString();
+    }
+
+    private static void appendSummary(StringBuilder text, String name, String help, String groupLabel,
+                                      Map<String, Map<String, Histogram>> group) {
+
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(" summary\n");
+
+        for (Map.Entry<String, Map<String, Histogram>> entry : new TreeMap<>(group).entrySet()) {
+            for (Map.Entry<String, Histogram> command : new TreeMap<>(entry.getValue()).entrySet()) {
+
+                Histogram histogram = command.getValue();
+                String labels = (groupLabel == null ? "" : groupLabel + "=\"" + escape(entry.getKey()) + "\",")
+                        + "command=\"" + escape(command.getKey()) + "\"";
+
+                for (double percentile : REPORTED_PERCENTILES) {
+                    text.append(name).append('{').append(labels).append(",quantile=\"").append(percentile / 100)
+                            .append("\"} ").append(histogram.getValueAtPercentile(percentile) / 1e6).append('\n');
+                }
+
+                text.append(name).append("_sum{").append(labels).append("} ")
+                        .append(histogram.getMean() * histogram.getTotalCount() / 1e6).append('\n');
+                text.append(name).append("_count{").append(labels).append("} ")
+                        .append(histogram.getTotalCount()).append('\n');
+            }
+        }
+    }
+
+    private static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * Write command-metrics.json and command-metrics.prom to framework.metricsFolder
+     */
+    public static void export() {
+
+        if (byCommand.isEmpty()) {
+            return;
+        }
+
+        String folder = System.getProperty("framework.metricsFolder");
+
+        // Unset maven properties come through as the literal ${...} placeholder
+        if (folder == null || folder.startsWith("${")) {
+            folder = "target";
+        }
+
+        Path path = Paths.get(folder);
+
+        try {
+            Files.createDirectories(path);
+            Files.write(path.resolve("command-metrics.json"), toJSON().toString(2).getBytes(StandardCharsets.UTF_8));
+            Files.write(path.resolve("command-metrics.prom"), toPrometheus().getBytes(StandardCharsets.UTF_8));
+            System.out.println("Command metrics written to " + path.toAbsolutePath());
+        }
+        catch (IOException e) {
+            System.out.println("Unable to write command metrics to " + path + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Times every command before handing it on to the driver's real executor
+     */
+    private static class TimedCommandExecutor implements CommandExecutor {
+
+        private final CommandExecutor executor;
+        private volatile String page;
+
+        private TimedCommandExecutor(CommandExecutor executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public Response execute(Command command) throws IOException {
+
+            long start = System.nanoTime();
+
+            try {
+                return executor.execute(command);
+            }
+            finally {
+                record(command.getName(), page, System.nanoTime() - start);
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package framework;
+
+import org.testng.IExecutionListener;
+import org.testng.ITestListener;
+import org.testng.ITestResult;
+
+/**
+ * TestNG listener which attributes WebDriver commands to the test that sent them and exports the CommandMetrics at the
+ * end of the run.  The number of commands each test sent and the time spent on them are added to the test result as
+ * the commandCount and commandMillis attributes.
+ *
+ * It's registered for the whole run through surefire's configuration in the pom, so the metrics are written once all
+ * the test classes have finished.
+ */
+public class CommandMetricsListener implements ITestListener, IExecutionListener {
+
+    @Override
+    public void onTestStart(ITestResult result) {
+        if (CommandMetrics.isEnabled()) {
+            CommandMetrics.startTest(TestHistory.invocationOf(result));
+        }
+    }
+
+    @Override
+    public void onTestSuccess(ITestResult result) {
+        finish(result);
+    }
+
+    @Override
+    public void onTestFailure(ITestResult result) {
+        finish(result);
+    }
+
+    @Override
+    public void onTestSkipped(ITestResult result) {
+        finish(result);
+    }
+
+    @Override
+    public void onTestFailedButWithinSuccessPercentage(ITestResult result) {
+        finish(result);
+    }
+
+    private void finish(ITestResult result) {
+
+        if (!CommandMetrics.isEnabled()) {
+            return;
+        }
+
+        String invocation = TestHistory.invocationOf(result);
+
+        result.setAttribute("commandCount", CommandMetrics.getCommandCount(invocation));
+        result.setAttribute("commandMillis", CommandMetrics.getCommandMillis(invocation));
+        CommandMetrics.endTest();
+    }
+
+    @Override
+    public void onExecutionFinish() {
+        if (CommandMetrics.isEnabled()) {
+            CommandMetrics.export();
+        }
+    }
+}
@@ -2,19 +2,123 @@ package framework;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 
 /**
  * Class is responsible for providing config values to the rest of the framework.  If we have multiple test environments
  * each one should have it's own config file, and we use the framework.config system property to define which one we're
- * using at runtime.
+ * using at runtime.  Values in config.properties are used as defaults for every environment, so the environment files
+ * only need to contain the values which are different.
+ *
+ * The config is loaded once and shared between all threads as an immutable snapshot, with any system property
+ * overrides applied at load time.  Use ConfigManager.get() to access it.  If the framework.configReload system property
+ * is set the config files are watched and a new snapshot is loaded whenever one of them changes.
  */
 public class ConfigManager {
 
-    private Properties props;
+    private static final String DEFAULT_CONFIG = "config.properties";
 
+    // Keys which can be supplied as system properties even if they're missing from the config files
+    private static final String[] KNOWN_KEYS = {"hub_url", "base_url", "driver_folder", "email_username", "email_domain",
+            "screenshot_path", "imap_host", "imap_port", "imap_username", "imap_password", "driver_browser",
+            "use_selenium_grid", "baseline_path"};
+
+    private static volatile ConfigManager current;
+
+    private final environment env;
+    private final Map<String, String> values;
+    private final URL hubURL;
+    private final Integer imapPort;
+    private final Path screenshotPath;
+    private final Path baselinePath;
+
+    /**
+     * Creates a copy of the current config snapshot.  Prefer ConfigManager.get() which doesn't create a new object.
+     */
     public ConfigManager() {
-        props = new Properties();
+        this(get());
+    }
+
+    private ConfigManager(ConfigManager snapshot) {
+        env = snapshot.env;
+        values = snapshot.values;
+        hubURL = snapshot.hubURL;
+        imapPort = snapshot.imapPort;
+        screenshotPath = snapshot.screenshotPath;
+        baselinePath = snapshot.baselinePath;
+    }
+
+    private ConfigManager(environment env, Map<String, String> values) {
+        this.env = env;
+        this.values = values;
+
+        // Check the typed values up front so that a bad config fails straight away rather than half way through a run
+        try {
+            hubURL = values.containsKey("hub_url") ? new URL(values.get("hub_url")) : null;
+        }
+        catch (MalformedURLException e) {
+            throw new IllegalStateException("Selenium Hub URL invalid: " + values.get("hub_url"));
+        }
+
+        try {
+            imapPort = values.containsKey("imap_port") ? Integer.valueOf(values.get("imap_port")) : null;
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalStateException("IMAP port invalid: " + values.get("imap_port"));
+        }
+
+        screenshotPath = values.containsKey("screenshot_path") ? Paths.get(values.get("screenshot_path")) : null;
+        baselinePath = values.containsKey("baseline_path") ? Paths.get(values.get("baseline_path")) : null;
+    }
+
+    /**
+     * Get the current config snapshot, loading it the first time it's needed
+     */
+    public static ConfigManager get() {
+        ConfigManager config = current;
+
+        if (config == null) {
+            synchronized (ConfigManager.class) {
+                if (current == null) {
+                    current = load();
+
+                    if (Boolean.parseBoolean(System.getProperty("framework.configReload"))) {
+                        watchForChanges(current.env);
+                    }
+                }
+                config = current;
+            }
+        }
+
+        return config;
+    }
+
+    /**
+     * Discard the current snapshot and load the config again, picking up any changes to the config files or to the
+     * system properties
+     */
+    public static synchronized ConfigManager reload() {
+        current = load();
+        return current;
+    }
+
+    private static ConfigManager load() {
 
         environment env = environment.fromString(System.getProperty("framework.config"));
 
@@ -23,16 +127,110 @@ public class ConfigManager {
             System.out.println("framework.config property not specified, defaulting to '" + env.envName + "'");
         }
 
-        try {
-            InputStream input = getClass().getClassLoader().getResourceAsStream(env.configFileName);
+        Properties props = new Properties();
+        loadFile(props, DEFAULT_CONFIG);
+
+        if (!env.configFileName.equals(DEFAULT_CONFIG)) {
+            loadFile(props, env.configFileName);
+        }
+
+        // System properties take precedence over anything in the config files
+        Map<String, String> values = new HashMap<>();
+        Set<String> keys = new HashSet<>(props.stringPropertyNames());
+        Collections.addAll(keys, KNOWN_KEYS);
+
+        for (String key : keys) {
+            String val = System.getProperty(key);
+
+            if (val == null || val.equals("")) {
+                val = props.getProperty(key);
+            }
+
+            if (val != null && !val.equals("")) {
+                values.put(key, val);
+            }
+        }
+
+        return new ConfigManager(env, Collections.unmodifiableMap(values));
+    }
+
+    private static void loadFile(Properties props, String fileName) {
+
+        try (InputStream input = ConfigManager.class.getClassLoader().getResourceAsStream(fileName)) {
+
+            if (input == null) {
+                throw new IllegalStateException("Config file not found: " + fileName);
+            }
+
             props.load(input);
-        } catch (IOException e) {
-            System.out.println("Config file not found");
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Unable to read config file: " + fileName, e);
         }
     }
 
-    public String getHubURL() {
-        return getPropValue("hub_url");
+    /**
+     * Start a background thread which reloads the config whenever the files for the environment change.  This only
+     * works when the config files are on the file system rather than packaged in a jar.
+     */
+    private static void watchForChanges(environment env) {
+
+        URL configURL = ConfigManager.class.getClassLoader().getResource(env.configFileName);
+
+        if (configURL == null || !"file".equals(configURL.getProtocol())) {
+            System.out.println("Config files are not on the file system, config reload disabled");
+            return;
+        }
+
+        WatchService watcher;
+
+        try {
+            Path configDir = Paths.get(configURL.toURI()).getParent();
+
+            watcher = FileSystems.getDefault().newWatchService();
+            configDir.register(watcher, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_CREATE);
+        }
+        catch (IOException | URISyntaxException e) {
+            System.out.println("Unable to watch config files, config reload disabled");
+            e.printStackTrace();
+            return;
+        }
+
+        Thread watchThread = new Thread(() -> {
+            try {
+                while (true) {
+                    WatchKey key = watcher.take();
+                    boolean changed = false;
+
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        String fileName = String.valueOf(event.context());
+                        changed |= fileName.equals(DEFAULT_CONFIG) || fileName.equals(env.configFileName);
+                    }
+
+                    key.reset();
+
+                    if (changed) {
+                        try {
+                            reload();
+                            System.out.println("Config reloaded");
+                        }
+                        catch (IllegalStateException e) {
+                            System.out.println("Config not reloaded, keeping previous values: " + e.getMessage());
+                        }
+                    }
+                }
+            }
+            catch (InterruptedException | ClosedWatchServiceException e) {
+                // Nothing more to watch
+            }
+        }, "config-watcher");
+
+        watchThread.setDaemon(true);
+        watchThread.start();
+    }
+
+    public URL getHubURL() {
+        return require("hub_url", hubURL);
     }
 
     public String getDriverFolder() {
@@ -49,27 +247,27 @@ public class ConfigManager {
 
     public String getEmailDomain() { return getPropValue("email_domain"); }
 
-    public String getScreenshotPath() { return getPropValue("screenshot_path"); }
+    public Path getScreenshotPath() { return require("screenshot_path", screenshotPath); }
+
+    public Path getBaselinePath() { return require("baseline_path", baselinePath); }
 
     public String getImapHost() { return getPropValue("imap_host"); }
 
-    public int getImapPort() { return Integer.parseInt(getPropValue("imap_port")); }
+    public int getImapPort() { return require("imap_port", imapPort); }
 
     public String getImapUsername() { return getPropValue("imap_username"); }
 
     public String getImapPassword() { return getPropValue("imap_password"); }
 
-    private String getPropValue(String key) {
+    public environment getEnvironment() { return env; }
 
-        // First, try and get the property from system properties
-        String val = System.getProperty(key);
+    private String getPropValue(String key) {
+        return require(key, values.get(key));
+    }
 
-        // If it's not there, check the config
-        if (val == null || val.equals("")) {
-            val = props.getProperty(key);
-        }
+    private static <T> T require(String key, T val) {
 
-        if (val == null || val.equals("")) {
+        if (val == null) {
             throw new IllegalStateException("No value set for property: " + key);
         }
 
@@ -77,17 +275,17 @@ public class ConfigManager {
     }
 
     public String getDriverBrowser() {
-        return props.getProperty("driver_browser");
+        return values.get("driver_browser");
     }
 
     public String getUseSeleniumGrid() {
-        return props.getProperty("use_selenium_grid");
+        return values.get("use_selenium_grid");
     }
 
     public enum environment {
         TEST ("config.properties", "test"),
-        STAGING ("config.properties", "staging"),
-        PRODUCTION ("config.properties", "production");
+        STAGING ("config-staging.properties", "staging"),
+        PRODUCTION ("config-production.properties", "production");
 
         public final String configFileName;
         public final String envName;
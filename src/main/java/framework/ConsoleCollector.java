@@ -0,0 +1,274 @@
+package framework;
+
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.devtools.DevTools;
+import org.openqa.selenium.devtools.HasDevTools;
+import org.openqa.selenium.devtools.events.ConsoleEvent;
+import org.openqa.selenium.devtools.idealized.Domains;
+import org.openqa.selenium.remote.RemoteWebDriver;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+/**
+ * Collects browser console messages and uncaught JavaScript exceptions for a driver as they happen, rather than
+ * fetching the whole log at the end of the test.  Enabled with the framework.consoleCapture system property.
+ *
+ * Chrome and Edge stream events to us over the DevTools protocol, so collecting them costs no extra commands.  Other
+ * browsers have a small script installed after each page load which records console errors and warnings and uncaught
+ * exceptions in the page.  These are fetched before the next page is loaded and whenever the entries are read.  Anything
+ * logged before the script is installed is missed.
+ *
+ * Entries go into a ring buffer of framework.consoleBufferSize entries (defaults to 1000), so a page logging thousands
+ * of lines only keeps the latest ones.  Long messages are truncated.  Severe entries are counted separately, so they're
+ * never lost from the count even if the entries themselves have been pushed out of the buffer.
+ */
+public class ConsoleCollector {
+
+    private static final int MAX_MESSAGE_LENGTH = 2000;
+
+    private static final String HOOK_SCRIPT =
+            "if (window.__frameworkConsole) { return; }" +
+            "var buffer = window.__frameworkConsole = [];" +
+            "var max = arguments[0];" +
+            "function record(type, message) {" +
+            "  if (buffer.length >= max) { buffer.shift(); }" +
+            "  buffer.push({type: type, message: String(message), time: Date.now()});" +
+            "}" +
+            "['error', 'warn'].forEach(function(name) {" +
+            "  var original = console[name];" +
+            "  console[name] = function() {" +
+            "    record(name === 'warn' ? 'warning' : name, Array.prototype.join.call(arguments, ' '));" +
+            "    return original.apply(console, arguments);" +
+            "  };" +
+            "});" +
+            "window.addEventListener('error', function(event) { record('exception', event.message); });";
+
+    private static final String DRAIN_SCRIPT =
+            "var buffer = window.__frameworkConsole || [];" +
+            "var entries = buffer.slice();" +
+            "buffer.length = 0;" +
+            "return entries;";
+
+    private final RemoteWebDriver driver;
+    private final int capacity = Integer.getInteger("framework.consoleBufferSize", 1000);
+    private final ArrayDeque<ConsoleEntry> entries = new ArrayDeque<>();
+    private final captureMode mode;
+
+    private volatile String currentUrl;
+    private volatile String currentPage;
+    private long severeCount;
+    private long droppedCount;
+
+    ConsoleCollector(RemoteWebDriver driver) {
+        this.driver = driver;
+
+        if (!Boolean.parseBoolean(System.getProperty("framework.consoleCapture"))) {
+            mode = captureMode.OFF;
+        }
+        else if (driver instanceof HasDevTools && startDevTools((HasDevTools) driver)) {
+            mode = captureMode.DEVTOOLS;
+        }
+        else {
+            mode = captureMode.SCRIPT;
+        }
+    }
+
+    /**
+     * Subscribe to console, exception and browser log events
+     * @return False if the browser doesn't support DevTools after all
+     */
+    private boolean startDevTools(HasDevTools devToolsDriver) {
+
+        try {
+            DevTools devTools = devToolsDriver.getDevTools();
+            devTools.createSessionIfThereIsNotOne();
+            Domains domains = devTools.getDomains();
+
+            domains.events().addConsoleListener(this::onConsoleEvent);
+            domains.events().addJavascriptExceptionListener(e -> record(Level.SEVERE, "exception", e.getMessage()));
+
+            // Errors raised by the browser itself, i.e. failed requests
+            devTools.send(domains.log().enable());
+            devTools.addListener(domains.log().entryAdded(),
+                    entry -> record(entry.getEntry().getLevel(), "browser", entry.getEntry().getMessage()));
+
+            return true;
+        }
+        catch (WebDriverException e) {
+            System.out.println("DevTools not available, capturing console with a script instead: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void onConsoleEvent(ConsoleEvent event) {
+        record(levelFor(event.getType()), event.getType(), String.join(" ", event.getMessages()));
+    }
+
+    private static Level levelFor(String type) {
+
+        switch (type) {
+            case "error":
+            case "assert":
+            case "exception":
+                return Level.SEVERE;
+            case "warning":
+                return Level.WARNING;
+            case "debug":
+            case "trace":
+                return Level.FINE;
+            default:
+                return Level.INFO;
+        }
+    }
+
+    private void record(Level level, String type, String message) {
+        record(Instant.now(), level, type, message);
+    }
+
+    private synchronized void record(Instant timestamp, Level level, String type, String message) {
+
+        if (message != null && message.length() > MAX_MESSAGE_LENGTH) {
+            message = message.substring(0, MAX_MESSAGE_LENGTH) + "...";
+        }
+
+        if (entries.size() >= capacity) {
+            entries.removeFirst();
+            droppedCount++;
+        }
+
+        entries.addLast(new ConsoleEntry(timestamp, level, type, message, currentUrl, currentPage));
+
+        if (level.intValue() >= Level.SEVERE.intValue()) {
+            severeCount++;
+        }
+    }
+
+    /**
+     * Called by the driver before it loads a new page, so entries from the current page aren't lost
+     */
+    void beforeNavigate() {
+        drainScriptEntries();
+    }
+
+    /**
+     * Called by the driver once it's loaded a new page
+     */
+    void afterNavigate(String url) {
+        currentUrl = url;
+
+        if (mode == captureMode.SCRIPT) {
+            try {
+                driver.executeScript(HOOK_SCRIPT, capacity);
+            }
+            catch (WebDriverException e) {
+                // Page may not allow scripts, i.e. an error page, just carry on
+            }
+        }
+    }
+
+    /**
+     * Record which page object the test is using, so entries can be matched up with it
+     */
+    public void setPage(String page) {
+        currentPage = page;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void drainScriptEntries() {
+
+        if (mode != captureMode.SCRIPT) {
+            return;
+        }
+
+        try {
+            Object drained = driver.executeScript(DRAIN_SCRIPT);
+
+            if (drained instanceof List) {
+                for (Map<String, Object> entry : (List<Map<String, Object>>) drained) {
+                    String type = String.valueOf(entry.get("type"));
+                    Object time = entry.get("time");
+                    Instant timestamp = time instanceof Number ? Instant.ofEpochMilli(((Number) time).longValue()) : Instant.now();
+
+                    record(timestamp, levelFor(type), type, String.valueOf(entry.get("message")));
+                }
+            }
+        }
+        catch (WebDriverException e) {
+            // Page may not allow scripts, i.e. an error page, just carry on
+        }
+    }
+
+    /**
+     * @return True if console capture is turned on for this driver
+     */
+    public boolean isCapturing() {
+        return mode != captureMode.OFF;
+    }
+
+    /**
+     * @return Entries currently held in the buffer, oldest first
+     */
+    public List<ConsoleEntry> getEntries() {
+        return getEntries(Level.ALL);
+    }
+
+    /**
+     * @param minimum Lowest level of entry to return
+     * @return Entries currently held in the buffer at or above the supplied level, oldest first
+     */
+    public List<ConsoleEntry> getEntries(Level minimum) {
+
+        drainScriptEntries();
+
+        List<ConsoleEntry> matching = new ArrayList<>();
+
+        synchronized (this) {
+            for (ConsoleEntry entry : entries) {
+                if (entry.getLevel().intValue() >= minimum.intValue()) {
+                    matching.add(entry);
+                }
+            }
+        }
+
+        return matching;
+    }
+
+    /**
+     * @return Number of severe entries recorded, including any which have since been pushed out of the buffer
+     */
+    public long getSevereCount() {
+        drainScriptEntries();
+
+        synchronized (this) {
+            return severeCount;
+        }
+    }
+
+    /**
+     * @return Number of entries pushed out of the buffer because it was full
+     */
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * Forget everything recorded so far, i.e. when a pooled driver is handed to a new test
+     */
+    public synchronized void clear() {
+        entries.clear();
+        severeCount = 0;
+        droppedCount = 0;
+        currentPage = null;
+    }
+
+    private enum captureMode {
+        OFF,
+        DEVTOOLS,
+        SCRIPT
+    }
+}
@@ -0,0 +1,64 @@
+package framework;
+
+import java.time.Instant;
+import java.util.logging.Level;
+
+/**
+ * A single browser console message or uncaught JavaScript exception, tagged with where the browser was at the time
+ */
+public class ConsoleEntry {
+
+    private final Instant timestamp;
+    private final Level level;
+    private final String type;
+    private final String message;
+    private final String url;
+    private final String page;
+
+    ConsoleEntry(Instant timestamp, Level level, String type, String message, String url, String page) {
+        this.timestamp = timestamp;
+        this.level = level;
+        this.type = type;
+        this.message = message;
+        this.url = url;
+        this.page = page;
+    }
+
+    public Instant getTimestamp() {
+        return timestamp;
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    /**
+     * @return Where the entry came from, i.e. the console method called ("log", "error"), "exception" or "browser"
+     */
+    public String getType() {
+        return type;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * @return URL last loaded by the driver when the entry was recorded, or null if nothing had been loaded yet
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return Page object the test was using when the entry was recorded, or null if it wasn't using one
+     */
+    public String getPage() {
+        return page;
+    }
+
+    @Override
+    public String toString() {
+        return timestamp + " " + level + " [" + type + "] " + message + " (" + (page != null ? page + " " : "") + url + ")";
+    }
+}
@@ -0,0 +1,95 @@
+package framework;
+
+import org.openqa.selenium.WebDriverException;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps track of the drivers belonging to the test running on the current thread.  Every driver created through
+ * DriverFactory is registered here, so when tests are run in parallel each test only ever sees its own browser, and the
+ * DriverContextListener can find it again to take a screenshot and shut it down once the test has finished.
+ */
+public class DriverContext {
+
+    private static final ThreadLocal<Deque<DriverWrapper>> drivers = ThreadLocal.withInitial(ArrayDeque::new);
+
+    // Every driver which is still registered with a test, so anything left behind can be closed when the JVM exits
+    private static final Set<DriverWrapper> liveDrivers = ConcurrentHashMap.newKeySet();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            for (DriverWrapper driver : liveDrivers) {
+                try {
+                    driver.shutDown();
+                }
+                catch (WebDriverException e) {
+                    // Browser has already gone
+                }
+            }
+        }));
+    }
+
+    private DriverContext() {
+
+    }
+
+    /**
+     * Register a driver with the test running on this thread
+     * @param driver Driver the test is using
+     */
+    public static void set(DriverWrapper driver) {
+        drivers.get().push(driver);
+        liveDrivers.add(driver);
+    }
+
+    /**
+     * Get the driver most recently created by the test running on this thread
+     * @return Driver for the current test
+     */
+    public static DriverWrapper get() {
+        DriverWrapper driver = drivers.get().peek();
+
+        if (driver == null) {
+            throw new IllegalStateException("No driver has been created for the current test");
+        }
+
+        return driver;
+    }
+
+    /**
+     * @return True if the test running on this thread has created a driver
+     */
+    public static boolean isSet() {
+        return !drivers.get().isEmpty();
+    }
+
+    /**
+     * @return The drivers registered with the test running on this thread, most recent first
+     */
+    static Deque<DriverWrapper> getAll() {
+        return new ArrayDeque<>(drivers.get());
+    }
+
+    /**
+     * Unregister a driver which has been shut down
+     * @param driver Driver to unregister
+     */
+    static void remove(DriverWrapper driver) {
+        drivers.get().remove(driver);
+        liveDrivers.remove(driver);
+    }
+
+    /**
+     * Unregister all of the drivers belonging to the test running on this thread, without shutting them down
+     * @return The drivers which were registered, most recent first
+     */
+    public static Deque<DriverWrapper> removeAll() {
+        Deque<DriverWrapper> removed = drivers.get();
+        drivers.remove();
+        liveDrivers.removeAll(removed);
+        return removed;
+    }
+}
@@ -0,0 +1,152 @@
+package framework;
+
+import org.openqa.selenium.WebDriverException;
+import org.testng.IInvokedMethod;
+import org.testng.IInvokedMethodListener;
+import org.testng.ITestListener;
+import org.testng.ITestResult;
+
+import java.util.Arrays;
+import java.util.logging.Level;
+
+/**
+ * TestNG listener which cleans up after each test.  Any drivers the test created are shut down once it finishes, and if
+ * the test didn't pass a screenshot is taken first.  Screenshots are named after the test class and method so they
+ * can be matched up with the failure when tests are run in parallel.  The number of element lookups each driver saved
+ * by reusing elements is logged and added to the test result as the elementLookupsSaved attribute.
+ *
+ * Before each test starts the TestDataGenerator for its thread is reseeded from the run seed and the test's name, so
+ * a test gets the same random data when the run is replayed with the same framework.seed.  The test's seed is added
+ * to the result as the dataSeed attribute and logged if the test doesn't pass.
+ *
+ * If framework.failOnConsoleErrors is set, a test which passed is marked as failed if any severe browser console
+ * entries or uncaught JavaScript errors were captured while it ran.  This needs framework.consoleCapture to be set too.
+ * The check is made as soon as the test method returns, before TestNG decides how the test went, so the failure is
+ * reported to every other listener and the test is retried like any other failure.
+ *
+ * Add it to a test class with {@literal @}Listeners(DriverContextListener.class) or to the listeners section of the
+ * suite xml.
+ */
+public class DriverContextListener implements ITestListener, IInvokedMethodListener {
+
+    @Override
+    public void onTestStart(ITestResult result) {
+
+        // Include the parameters so each invocation of a data driven test gets different data
+        String testName = result.getTestClass().getRealClass().getName() + "." + result.getMethod().getMethodName()
+                + Arrays.toString(result.getParameters());
+
+        result.setAttribute("dataSeed", TestDataGenerator.reseedForTest(testName));
+    }
+
+    @Override
+    public void afterInvocation(IInvokedMethod method, ITestResult result) {
+
+        if (!method.isTestMethod()) {
+            return;
+        }
+
+        for (DriverWrapper driver : DriverContext.getAll()) {
+
+            if (!driver.isActive()) {
+                continue;
+            }
+
+            try {
+                checkConsole(driver, result);
+            }
+            catch (WebDriverException e) {
+                System.out.println("Unable to check browser console: " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void onTestSuccess(ITestResult result) {
+        cleanUp(result);
+    }
+
+    @Override
+    public void onTestFailure(ITestResult result) {
+        cleanUp(result);
+    }
+
+    @Override
+    public void onTestSkipped(ITestResult result) {
+        cleanUp(result);
+    }
+
+    @Override
+    public void onTestFailedButWithinSuccessPercentage(ITestResult result) {
+        cleanUp(result);
+    }
+
+    private void cleanUp(ITestResult result) {
+
+        String testName = result.getTestClass().getRealClass().getSimpleName() + "." + result.getMethod().getMethodName();
+        long lookupsSaved = 0;
+
+        for (DriverWrapper driver : DriverContext.removeAll()) {
+
+            // The test may already have shut the driver down itself
+            if (!driver.isActive()) {
+                continue;
+            }
+
+            lookupsSaved += driver.getElementLookupsSaved();
+
+            if (Boolean.parseBoolean(System.getProperty("framework.debugMode"))) {
+                System.out.println(testName + ": " + driver.getElementCacheStats());
+            }
+
+            try {
+                if (!result.isSuccess()) {
+                    driver.takeScreenShot(testName);
+                }
+            }
+            catch (WebDriverException e) {
+                System.out.println("Unable to take screenshot: " + e.getMessage());
+            }
+
+            try {
+                driver.shutDown();
+            }
+            catch (WebDriverException e) {
+                System.out.println("Error shutting down driver: " + e.getMessage());
+            }
+        }
+
+        result.setAttribute("elementLookupsSaved", lookupsSaved);
+
+        if (!result.isSuccess() && result.getAttribute("dataSeed") != null) {
+            System.out.println(testName + ": test data seed " + result.getAttribute("dataSeed") + ", run seed "
+                    + TestDataGenerator.getRunSeed());
+        }
+    }
+
+    private void checkConsole(DriverWrapper driver, ITestResult result) {
+
+        ConsoleCollector console = driver.getConsole();
+
+        if (!console.isCapturing() || console.getSevereCount() == 0) {
+            return;
+        }
+
+        StringBuilder errors = new StringBuilder("Browser console errors:");
+
+        for (ConsoleEntry entry : console.getEntries(Level.SEVERE)) {
+            errors.append("\n").append(entry);
+        }
+
+        if (console.getDroppedCount() > 0) {
+            errors.append("\n(").append(console.getDroppedCount()).append(" older entries dropped)");
+        }
+
+        System.out.println(errors);
+
+        if (result.isSuccess() && Boolean.parseBoolean(System.getProperty("framework.failOnConsoleErrors"))) {
+            result.setStatus(ITestResult.FAILURE);
+            result.setThrowable(new IllegalStateException(errors.toString()));
+        }
+    }
+}
@@ -1,25 +1,36 @@
 package framework;
 
 import framework.enums.SupportedBrowsers;
+import org.openqa.selenium.PageLoadStrategy;
 import org.openqa.selenium.chrome.ChromeDriver;
 import org.openqa.selenium.chrome.ChromeOptions;
+import org.openqa.selenium.chromium.HasCdp;
 import org.openqa.selenium.edge.EdgeDriver;
 import org.openqa.selenium.edge.EdgeOptions;
 import org.openqa.selenium.firefox.FirefoxDriver;
 import org.openqa.selenium.firefox.FirefoxOptions;
+import org.openqa.selenium.remote.AbstractDriverOptions;
+import org.openqa.selenium.remote.Augmenter;
 import org.openqa.selenium.remote.LocalFileDetector;
 import org.openqa.selenium.remote.RemoteWebDriver;
 import org.openqa.selenium.safari.SafariDriver;
 import org.openqa.selenium.safari.SafariOptions;
 
-import java.io.IOException;
-import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Class contains all the methods to initialize a driver instance
  */
 public class DriverFactory {
 
+    private static DriverPool localPool;
+    private static DriverPool gridPool;
+
     private DriverFactory() {
 
     }
@@ -29,7 +40,7 @@ public class DriverFactory {
      * @param driverBrowser Type of browser we want to startup
      */
     public static DriverWrapper createLocalDriver(SupportedBrowsers driverBrowser){
-        return setup(driverBrowser, false);
+        return register(DriverLifecycle.start(driverBrowser, false));
     }
 
     /**
@@ -37,7 +48,7 @@ public class DriverFactory {
      * @param driverBrowser  Type of browser we want to startup
      */
     public static DriverWrapper createGridDriver(SupportedBrowsers driverBrowser){
-        return setup(driverBrowser, true);
+        return register(DriverLifecycle.start(driverBrowser, true));
     }
 
     /**
@@ -48,7 +59,80 @@ public class DriverFactory {
         SupportedBrowsers driverBrowser = SupportedBrowsers.fromString(System.getProperty("framework.browser"));
         boolean useGrid = Boolean.parseBoolean(System.getProperty("framework.useSeleniumGrid"));
 
-        return setup(driverBrowser, useGrid);
+        if (Boolean.parseBoolean(System.getProperty("framework.driverPool"))) {
+            return register(getPool(useGrid).lease(driverBrowser));
+        }
+
+        return register(DriverLifecycle.start(driverBrowser, useGrid));
+    }
+
+    /**
+     * Start a new driver on a background thread, allowing the test to get on with other setup while the browser starts.
+     * As the driver is created on another thread it isn't registered with the DriverContext, so call DriverContext.set()
+     * once it's ready if you want it cleaned up automatically.
+     * @param driverBrowser Type of browser we want to startup
+     * @param useGrid True to start the browser on the Selenium Grid
+     * @return Future which completes once the browser is ready to use
+     */
+    public static CompletableFuture<DriverWrapper> createDriverAsync(SupportedBrowsers driverBrowser, boolean useGrid){
+        return DriverLifecycle.startAsync(driverBrowser, useGrid);
+    }
+
+    /**
+     * Start a new driver based on system properties on a background thread
+     * @return Future which completes once the browser is ready to use
+     */
+    public static CompletableFuture<DriverWrapper> createDriverFromSystemPropertiesAsync(){
+
+        SupportedBrowsers driverBrowser = SupportedBrowsers.fromString(System.getProperty("framework.browser"));
+        boolean useGrid = Boolean.parseBoolean(System.getProperty("framework.useSeleniumGrid"));
+
+        return createDriverAsync(driverBrowser, useGrid);
+    }
+
+    /**
+     * Lease an already running local driver from the pool, starting a new one if none are available.  Calling
+     * shutDown() on the driver hands it back to the pool rather than quitting the browser.
+     * @param driverBrowser Type of browser we want
+     */
+    public static DriverWrapper createPooledLocalDriver(SupportedBrowsers driverBrowser){
+        return register(getPool(false).lease(driverBrowser));
+    }
+
+    /**
+     * Lease an already running grid driver from the pool, starting a new one if none are available.  Calling
+     * shutDown() on the driver hands it back to the pool rather than quitting the browser.
+     * @param driverBrowser Type of browser we want
+     */
+    public static DriverWrapper createPooledGridDriver(SupportedBrowsers driverBrowser){
+        return register(getPool(true).lease(driverBrowser));
+    }
+
+    /**
+     * Register the driver with the test running on this thread so it can be cleaned up once the test has finished
+     */
+    private static DriverWrapper register(DriverWrapper driver) {
+        DriverContext.set(driver);
+        return driver;
+    }
+
+    /**
+     * Get the pool for local or grid drivers, creating it the first time it's needed
+     * @param useGrid True for the pool of grid drivers
+     */
+    public static synchronized DriverPool getPool(boolean useGrid) {
+
+        if (useGrid) {
+            if (gridPool == null) {
+                gridPool = new DriverPool(true);
+            }
+            return gridPool;
+        }
+
+        if (localPool == null) {
+            localPool = new DriverPool(false);
+        }
+        return localPool;
     }
 
     /**
@@ -56,63 +140,36 @@ public class DriverFactory {
      */
     public static DriverWrapper createDriverFromConfig(){
 
-        ConfigManager props = new ConfigManager();
+        ConfigManager props = ConfigManager.get();
         SupportedBrowsers driverBrowser = SupportedBrowsers.fromString(props.getDriverBrowser());
         boolean useGrid = Boolean.parseBoolean(props.getUseSeleniumGrid());
 
-        return setup(driverBrowser, useGrid);
+        return register(DriverLifecycle.start(driverBrowser, useGrid));
     }
 
     /**
      * Setup our new driver
      */
-    private static DriverWrapper setup(SupportedBrowsers driverBrowser, boolean useGrid) {
+    static DriverWrapper setup(SupportedBrowsers driverBrowser, boolean useGrid) {
 
         RemoteWebDriver driver;
-        ConfigManager props = new ConfigManager();
+        ConfigManager props = ConfigManager.get();
 
         // If no browser has been specified throw an exception
         if (driverBrowser == null) {
             throw new IllegalStateException("No browser has been specified");
         }
 
-        if (useGrid) {
-            URL seleniumHubUrl;
-
-            try {
-                seleniumHubUrl = new URL(props.getHubURL());
-            } catch (IOException e) {
-                throw new IllegalStateException("Selenium Hub URL invalid or not set");
-            }
-
-            switch(driverBrowser) {
-
-                case FIREFOX:
-                    driver = new RemoteWebDriver(seleniumHubUrl, new FirefoxOptions());
-                    break;
-
-                case CHROME_HEADLESS:
-                    ChromeOptions chromeOptions = new ChromeOptions();
-                    chromeOptions.setHeadless(true);
-                    chromeOptions.addArguments("window-size=1920,1200");
-                    driver = new RemoteWebDriver(seleniumHubUrl, chromeOptions);
-                    break;
-
-                case EDGE:
-                    driver = new RemoteWebDriver(seleniumHubUrl, new EdgeOptions());
-                    break;
-
-                case SAFARI:
-                    driver = new RemoteWebDriver(seleniumHubUrl, new SafariOptions());
-                    break;
-
-                case CHROME:
-                default:
-                    driver = new RemoteWebDriver(seleniumHubUrl, new ChromeOptions());
-                    break;
-            }
+        // Options are built the same way whether the browser runs locally or on the grid
+        AbstractDriverOptions<?> options = createOptions(driverBrowser);
 
+        if (useGrid) {
+            driver = new RemoteWebDriver(props.getHubURL(), options);
             driver.setFileDetector(new LocalFileDetector());
+
+            // Drivers from the grid only pick up DevTools support, used for URL blocking and console capture, once
+            // they've been augmented
+            driver = (RemoteWebDriver) new Augmenter().augment(driver);
         }
 
         else {
@@ -131,15 +188,7 @@ public class DriverFactory {
 
                 case FIREFOX:
                     System.setProperty("webdriver.gecko.driver", props.getDriverFolder() + geckoDriver + fileExtension);
-                    driver = new FirefoxDriver();
-                    break;
-
-                case CHROME_HEADLESS:
-                    System.setProperty("webdriver.chrome.driver", props.getDriverFolder() + chromeDriver + fileExtension);
-                    ChromeOptions chromeOptions = new ChromeOptions();
-                    chromeOptions.setHeadless(true);
-                    chromeOptions.addArguments("window-size=1920,1200");
-                    driver = new ChromeDriver(chromeOptions);
+                    driver = new FirefoxDriver((FirefoxOptions) options);
                     break;
 
                 case EDGE:
@@ -150,25 +199,28 @@ public class DriverFactory {
                     // HKEY_LOCAL_MACHINE\SOFTWARE\Policies\Microsoft\Windows\WindowsUpdate\AU
                     // If UseWUServer exists set it's value to 0, then restart and install Microsoft Webdriver normally
                     // TODO include this in a readme
-                    EdgeOptions edgeOptions = new EdgeOptions();
-                    driver = new EdgeDriver(edgeOptions);
+                    driver = new EdgeDriver((EdgeOptions) options);
                     break;
 
                 case SAFARI:
                     // Need to Allow Remote Automation from the Develop menu
                     // Develop menu needs to be enabled from Preferences -> Advanced
                     // TODO include this in a readme
-                    driver = new SafariDriver();
+                    driver = new SafariDriver((SafariOptions) options);
                     break;
 
+                case CHROME_HEADLESS:
                 case CHROME:
                 default:
                     System.setProperty("webdriver.chrome.driver", props.getDriverFolder() + chromeDriver + fileExtension);
-                    driver = new ChromeDriver();
+                    driver = new ChromeDriver((ChromeOptions) options);
                     break;
             }
         }
 
+        CommandMetrics.instrument(driver);
+        blockUrls(driver, driverBrowser);
+
         // Maximise the window
         driver.manage().window().maximize();
 
@@ -176,4 +228,108 @@ public class DriverFactory {
 
         return new DriverWrapper(driver, driverBrowser);
     }
+
+    /**
+     * Build the options for a browser, including the page load strategy from framework.pageLoadStrategy.  This can be
+     * normal (the default, wait for everything including images to load), eager (wait for the DOM to be ready) or none.
+     */
+    private static AbstractDriverOptions<?> createOptions(SupportedBrowsers driverBrowser) {
+
+        AbstractDriverOptions<?> options;
+
+        switch(driverBrowser) {
+
+            case FIREFOX:
+                options = new FirefoxOptions();
+                break;
+
+            case CHROME_HEADLESS:
+                ChromeOptions chromeOptions = new ChromeOptions();
+                chromeOptions.setHeadless(true);
+                chromeOptions.addArguments("window-size=1920,1200");
+                options = chromeOptions;
+                break;
+
+            case EDGE:
+                options = new EdgeOptions();
+                break;
+
+            case SAFARI:
+                options = new SafariOptions();
+                break;
+
+            case CHROME:
+            default:
+                options = new ChromeOptions();
+                break;
+        }
+
+        PageLoadStrategy pageLoadStrategy = PageLoadStrategy.fromString(System.getProperty("framework.pageLoadStrategy"));
+
+        if (pageLoadStrategy != null) {
+            options.setPageLoadStrategy(pageLoadStrategy);
+        }
+
+        return options;
+    }
+
+    /**
+     * Stop the browser loading anything matching the patterns in framework.blockedUrls, i.e. images or third party
+     * analytics which our tests never look at.  Patterns are comma separated and can use * as a wildcard, e.g.
+     * "*google-analytics.com*,*.woff2".  The names images, fonts and media can be used as shortcuts for the usual file
+     * extensions.  Blocking uses the Chrome DevTools protocol so it's only available for Chrome and Edge.
+     */
+    private static void blockUrls(RemoteWebDriver driver, SupportedBrowsers driverBrowser) {
+
+        List<String> patterns = getBlockedUrlPatterns();
+
+        if (patterns.isEmpty()) {
+            return;
+        }
+
+        if (!(driver instanceof HasCdp)) {
+            System.out.println("URL blocking is not supported by " + driverBrowser.browserName + ", loading all resources");
+            return;
+        }
+
+        Map<String, Object> blockedUrls = new HashMap<>();
+        blockedUrls.put("urls", patterns);
+
+        ((HasCdp) driver).executeCdpCommand("Network.enable", new HashMap<>());
+        ((HasCdp) driver).executeCdpCommand("Network.setBlockedURLs", blockedUrls);
+    }
+
+    private static List<String> getBlockedUrlPatterns() {
+
+        List<String> patterns = new ArrayList<>();
+        String blockedUrls = System.getProperty("framework.blockedUrls");
+
+        // Unset maven properties come through as the literal ${...} placeholder
+        if (blockedUrls == null || blockedUrls.startsWith("${")) {
+            return patterns;
+        }
+
+        for (String pattern : blockedUrls.split(",")) {
+            pattern = pattern.trim();
+
+            switch (pattern.toLowerCase()) {
+                case "":
+                    break;
+                case "images":
+                    Collections.addAll(patterns, "*.png", "*.jpg", "*.jpeg", "*.gif", "*.webp", "*.svg", "*.ico");
+                    break;
+                case "fonts":
+                    Collections.addAll(patterns, "*.woff", "*.woff2", "*.ttf", "*.otf", "*.eot");
+                    break;
+                case "media":
+                    Collections.addAll(patterns, "*.mp4", "*.webm", "*.mp3", "*.ogg");
+                    break;
+                default:
+                    patterns.add(pattern);
+                    break;
+            }
+        }
+
+        return patterns;
+    }
 }
@@ -0,0 +1,248 @@
+package framework;
+
+import framework.enums.SupportedBrowsers;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.remote.RemoteWebDriver;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Moves the slow parts of a browser's life (starting up and quitting) off the test thread.  Drivers can be started in
+ * the background ahead of the test which needs them, and quit in the background once a test has finished with them,
+ * so that as much of the browser lifecycle as possible overlaps with tests which are actually running.
+ *
+ * Background quitting is enabled with the framework.asyncQuit system property.
+ */
+class DriverLifecycle {
+
+    private static final long QUIT_TIMEOUT_SECONDS = 60;
+
+    private static final ExecutorService startupExecutor = Executors.newCachedThreadPool(daemonThreads("driver-startup"));
+
+    private static final ThreadPoolExecutor quitExecutor = new ThreadPoolExecutor(2, 2, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), daemonThreads("driver-quit"));
+
+    // Drivers which have been started ahead of time, keyed on browser type and whether they're running on the grid
+    private static final Map<String, Queue<CompletableFuture<DriverWrapper>>> prestarted = new ConcurrentHashMap<>();
+
+    // The type of driver most recently asked for, which is our best guess at what the next test will want
+    private static volatile SupportedBrowsers lastBrowser;
+    private static volatile boolean lastUseGrid;
+
+    // Set while the PrestartDriverListener is active, so each driver handed out is replaced by a new one straight away
+    private static volatile boolean prestartEnabled;
+
+    static {
+        quitExecutor.allowCoreThreadTimeOut(true);
+
+        // Don't let the JVM exit while there are still browsers waiting to be quit.  Shutdown hooks run in no set order,
+        // so DriverPool's and DriverContext's may still be quitting browsers.  Anything they hand us once the executor
+        // has been shut down is quit on their own thread instead.
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            discardPrestartedDrivers();
+            awaitBackgroundQuits();
+            quitExecutor.shutdown();
+
+            try {
+                quitExecutor.awaitTermination(QUIT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+    }
+
+    private DriverLifecycle() {
+
+    }
+
+    /**
+     * Start a new driver on a background thread
+     */
+    static CompletableFuture<DriverWrapper> startAsync(SupportedBrowsers driverBrowser, boolean useGrid) {
+        return CompletableFuture.supplyAsync(() -> DriverFactory.setup(driverBrowser, useGrid), startupExecutor);
+    }
+
+    /**
+     * Get a driver for the test, using one which has been started ahead of time if there's one available
+     */
+    static DriverWrapper start(SupportedBrowsers driverBrowser, boolean useGrid) {
+
+        if (driverBrowser == null) {
+            throw new IllegalStateException("No browser has been specified");
+        }
+
+        lastBrowser = driverBrowser;
+        lastUseGrid = useGrid;
+
+        Queue<CompletableFuture<DriverWrapper>> queue = prestarted.get(key(driverBrowser, useGrid));
+        CompletableFuture<DriverWrapper> future = (queue == null) ? null : queue.poll();
+
+        // Get the next test's driver starting while this test is running
+        if (prestartEnabled) {
+            prestartNextDriver();
+        }
+
+        if (future != null) {
+            try {
+                return future.join();
+            }
+            catch (CompletionException e) {
+                System.out.println("Prestarted driver failed to start, starting a new one: " + e.getCause());
+            }
+        }
+
+        return DriverFactory.setup(driverBrowser, useGrid);
+    }
+
+    /**
+     * Start a driver in the background for the next test, unless there's already one waiting.  We'll start the same
+     * type of driver as the last test asked for, or the one defined in the system properties if we don't know yet.
+     */
+    static void prestartNextDriver() {
+
+        SupportedBrowsers driverBrowser = lastBrowser;
+        boolean useGrid = lastUseGrid;
+
+        if (driverBrowser == null) {
+            driverBrowser = SupportedBrowsers.fromString(System.getProperty("framework.browser"));
+            useGrid = Boolean.parseBoolean(System.getProperty("framework.useSeleniumGrid"));
+        }
+
+        if (driverBrowser == null) {
+            return;
+        }
+
+        SupportedBrowsers browser = driverBrowser;
+        boolean grid = useGrid;
+
+        // Checked and added to atomically, so two tests starting at once don't both start a driver
+        prestarted.compute(key(driverBrowser, useGrid), (key, queue) -> {
+            if (queue == null) {
+                queue = new ConcurrentLinkedQueue<>();
+            }
+
+            if (queue.isEmpty()) {
+                queue.add(startAsync(browser, grid));
+            }
+
+            return queue;
+        });
+    }
+
+    static void setPrestartEnabled(boolean enabled) {
+        prestartEnabled = enabled;
+    }
+
+    /**
+     * Quit any drivers which were started ahead of time but never used, waiting for any still starting up so their
+     * browsers aren't left running when the JVM exits
+     */
+    static void discardPrestartedDrivers() {
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(QUIT_TIMEOUT_SECONDS);
+
+        for (Queue<CompletableFuture<DriverWrapper>> queue : prestarted.values()) {
+            CompletableFuture<DriverWrapper> future;
+
+            while ((future = queue.poll()) != null) {
+                try {
+                    future.get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS).quit();
+                }
+                catch (TimeoutException e) {
+                    System.out.println("Timed out waiting for a prestarted driver to start, it will be quit if it does");
+                    future.thenAccept(DriverWrapper::quit);
+                }
+                catch (ExecutionException e) {
+                    // Never started, so there's nothing to quit
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    future.thenAccept(DriverWrapper::quit);
+                    return;
+                }
+                catch (WebDriverException e) {
+                    System.out.println("Error quitting driver: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Quit the browser on a background thread so the test thread can carry straight on.  Once the JVM is shutting down
+     * and the quit threads have gone, the browser is quit on the calling thread instead.
+     */
+    static void quitInBackground(RemoteWebDriver driver) {
+
+        if (quitExecutor.isShutdown()) {
+            quit(driver);
+            return;
+        }
+
+        try {
+            quitExecutor.execute(() -> quit(driver));
+        }
+        catch (RejectedExecutionException e) {
+            quit(driver);
+        }
+    }
+
+    private static void quit(RemoteWebDriver driver) {
+        try {
+            driver.quit();
+        }
+        catch (WebDriverException e) {
+            System.out.println("Error quitting driver: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Wait for any browsers queued up to be quit to finish closing
+     */
+    static void awaitBackgroundQuits() {
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(QUIT_TIMEOUT_SECONDS);
+
+        try {
+            while ((quitExecutor.getActiveCount() > 0 || !quitExecutor.getQueue().isEmpty()) && System.nanoTime() < deadline) {
+                Thread.sleep(50);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static boolean isAsyncQuitEnabled() {
+        return Boolean.parseBoolean(System.getProperty("framework.asyncQuit"));
+    }
+
+    private static String key(SupportedBrowsers driverBrowser, boolean useGrid) {
+        return driverBrowser.browserName + (useGrid ? "@grid" : "@local");
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger count = new AtomicInteger();
+
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,295 @@
+package framework;
+
+import framework.enums.SupportedBrowsers;
+import org.openqa.selenium.JavascriptException;
+import org.openqa.selenium.WebDriverException;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of already started browsers which can be leased out to tests and handed back when they are finished with.
+ * Starting a browser is usually the slowest part of a UI test, so rather than quitting the browser at the end of each
+ * test we clear down its state (cookies, storage, extra tabs) and keep it for the next test which wants the same type
+ * of browser.  Browsers which fail their health check or which have been running for longer than the max age are
+ * quit and replaced with a fresh instance.
+ *
+ * The pool is sized with the following system properties:
+ * framework.driverPoolSize - Max number of browsers of each type which can be running at once (defaults to 4)
+ * framework.driverPoolMaxAge - Max number of seconds a browser will be reused for (defaults to 600)
+ * framework.driverPoolLeaseTimeout - Max number of seconds to wait for a free browser (defaults to 120)
+ */
+public class DriverPool {
+
+    private static final String BLANK_PAGE = "about:blank";
+
+    private final boolean useGrid;
+    private final int maxSize;
+    private final long maxAgeNanos;
+    private final long leaseTimeoutNanos;
+
+    private final Map<SupportedBrowsers, Partition> partitions = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong totalLeaseWaitNanos = new AtomicLong();
+    private final AtomicLong maxLeaseWaitNanos = new AtomicLong();
+
+    /**
+     * Create a new pool using the sizes set in the system properties
+     * @param useGrid True if the browsers in this pool should be started on the Selenium Grid
+     */
+    DriverPool(boolean useGrid) {
+        this(useGrid,
+                Integer.getInteger("framework.driverPoolSize", 4),
+                Integer.getInteger("framework.driverPoolMaxAge", 600),
+                Integer.getInteger("framework.driverPoolLeaseTimeout", 120));
+    }
+
+    DriverPool(boolean useGrid, int maxSize, long maxAgeSeconds, long leaseTimeoutSeconds) {
+
+        if (maxSize < 1) {
+            throw new IllegalStateException("Driver pool size must be at least 1");
+        }
+
+        this.useGrid = useGrid;
+        this.maxSize = maxSize;
+        this.maxAgeNanos = TimeUnit.SECONDS.toNanos(maxAgeSeconds);
+        this.leaseTimeoutNanos = TimeUnit.SECONDS.toNanos(leaseTimeoutSeconds);
+
+        // Make sure any idle browsers are closed down when the test run finishes
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+    }
+
+    /**
+     * Lease a browser from the pool, starting a new one if there are no idle browsers of the requested type.  If the
+     * pool is already at capacity we'll wait for another test to release a browser.
+     * @param driverBrowser Type of browser we want
+     * @return A browser with no cookies, storage or extra tabs, sat on a blank page
+     */
+    public DriverWrapper lease(SupportedBrowsers driverBrowser) {
+
+        if (driverBrowser == null) {
+            throw new IllegalStateException("No browser has been specified");
+        }
+
+        Partition partition = partitions.computeIfAbsent(driverBrowser, browser -> new Partition(maxSize));
+
+        long waitStart = System.nanoTime();
+
+        try {
+            if (!partition.permits.tryAcquire(leaseTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                throw new IllegalStateException("Timed out waiting for a " + driverBrowser.browserName + " driver from the pool");
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a driver from the pool", e);
+        }
+
+        recordLeaseWait(System.nanoTime() - waitStart);
+
+        try {
+            DriverWrapper driver;
+
+            // Take the most recently used browser first, discarding any which are no longer usable
+            while ((driver = partition.idle.pollFirst()) != null) {
+
+                if (isExpired(driver) || !isHealthy(driver)) {
+                    evict(driver);
+                    continue;
+                }
+
+                hits.incrementAndGet();
+                driver.leasedFrom(this);
+                return driver;
+            }
+
+            misses.incrementAndGet();
+            driver = DriverLifecycle.start(driverBrowser, useGrid);
+            driver.leasedFrom(this);
+            return driver;
+        }
+        catch (RuntimeException e) {
+            partition.permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Hand a browser back to the pool.  The browser state is cleared down so that nothing leaks into the next test,
+     * and if that fails for any reason the browser is quit instead.
+     * @param driver Browser previously leased from this pool
+     */
+    void release(DriverWrapper driver) {
+
+        Partition partition = partitions.get(driver.getDriverBrowser());
+
+        try {
+            if (isExpired(driver) || !reset(driver)) {
+                evict(driver);
+            }
+            else {
+                partition.idle.offerFirst(driver);
+            }
+        }
+        finally {
+            partition.permits.release();
+        }
+    }
+
+    /**
+     * Quit all the idle browsers in the pool and print the pool stats
+     */
+    public void close() {
+
+        for (Partition partition : partitions.values()) {
+            DriverWrapper driver;
+
+            while ((driver = partition.idle.pollFirst()) != null) {
+                quietlyQuit(driver);
+            }
+        }
+
+        if (hits.get() + misses.get() > 0) {
+            System.out.println(toString());
+        }
+    }
+
+    /**
+     * Clear down everything a test could have left behind in the browser
+     * @return True if the browser was reset successfully and can be reused
+     */
+    private boolean reset(DriverWrapper driver) {
+
+        try {
+            driver.okAlert();
+
+            // Storage can't be accessed once we're on about:blank so we need to clear it before navigating away
+            driver.deleteAllCookies();
+
+            try {
+                driver.clearLocalStorage();
+                driver.clearSessionStorage();
+            }
+            catch (JavascriptException e) {
+                // Page has no storage (i.e. the test never left about:blank)
+            }
+
+            // Close any tabs the test opened, keeping hold of the one we're currently on
+            String currentTab = driver.getCurrentTab();
+            Set<String> tabs = driver.getTabs();
+
+            for (String tab : tabs) {
+                if (!tab.equals(currentTab)) {
+                    driver.closeTab(tab);
+                }
+            }
+
+            driver.switchToTab(currentTab);
+            driver.get(BLANK_PAGE);
+
+            return true;
+        }
+        catch (WebDriverException e) {
+            System.out.println("Unable to reset " + driver.getDriverBrowser().browserName + " driver, removing it from the pool");
+            return false;
+        }
+    }
+
+    /**
+     * Checks that the browser session is still alive with a cheap round trip to the driver
+     */
+    private boolean isHealthy(DriverWrapper driver) {
+
+        try {
+            return !driver.getTabs().isEmpty();
+        }
+        catch (WebDriverException e) {
+            return false;
+        }
+    }
+
+    private boolean isExpired(DriverWrapper driver) {
+        return System.nanoTime() - driver.getCreatedAt() > maxAgeNanos;
+    }
+
+    private void evict(DriverWrapper driver) {
+        evictions.incrementAndGet();
+        quietlyQuit(driver);
+    }
+
+    private void quietlyQuit(DriverWrapper driver) {
+
+        try {
+            driver.quit();
+        }
+        catch (WebDriverException e) {
+            // The session is already dead so there's nothing more to do
+        }
+    }
+
+    private void recordLeaseWait(long waitNanos) {
+        totalLeaseWaitNanos.addAndGet(waitNanos);
+        maxLeaseWaitNanos.accumulateAndGet(waitNanos, Math::max);
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return Total time in milliseconds that tests have spent waiting for a browser to become available
+     */
+    public long getTotalLeaseWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(totalLeaseWaitNanos.get());
+    }
+
+    /**
+     * @return Longest time in milliseconds any single test has spent waiting for a browser to become available
+     */
+    public long getMaxLeaseWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxLeaseWaitNanos.get());
+    }
+
+    @Override
+    public String toString() {
+        long leases = hits.get() + misses.get();
+
+        return "Driver pool (" + (useGrid ? "grid" : "local") + ", size " + maxSize + "): "
+                + leases + " leases, "
+                + hits.get() + " hits, "
+                + misses.get() + " misses, "
+                + evictions.get() + " evictions, "
+                + "lease wait total " + getTotalLeaseWaitMillis() + "ms / "
+                + "avg " + (leases == 0 ? 0 : getTotalLeaseWaitMillis() / leases) + "ms / "
+                + "max " + getMaxLeaseWaitMillis() + "ms";
+    }
+
+    /**
+     * Idle browsers and capacity for a single browser type
+     */
+    private static class Partition {
+
+        private final Semaphore permits;
+        private final ConcurrentLinkedDeque<DriverWrapper> idle = new ConcurrentLinkedDeque<>();
+
+        private Partition(int maxSize) {
+            permits = new Semaphore(maxSize, true);
+        }
+    }
+}
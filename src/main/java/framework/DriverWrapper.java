@@ -1,16 +1,19 @@
 package framework;
 
 import framework.enums.SupportedBrowsers;
-import org.apache.commons.io.FileUtils;
 import org.openqa.selenium.*;
 import org.openqa.selenium.logging.LogEntry;
 import org.openqa.selenium.logging.LogType;
 import org.openqa.selenium.remote.RemoteWebDriver;
 
-import java.io.File;
-import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
 
 /**
  * Wrapper for the WebDriver instance providing
@@ -19,38 +22,113 @@ public class DriverWrapper {
 
     private RemoteWebDriver driver;
     private SupportedBrowsers driverBrowser;
+    private DriverPool pool;
+    private volatile boolean active = true;
+    private final long createdAt;
+    private final ElementCache elementCache;
+    private final ConsoleCollector console;
     public Waits waitFor;
 
     protected DriverWrapper(RemoteWebDriver driver, SupportedBrowsers driverBrowser) {
         this.driver = driver;
         this.driverBrowser = driverBrowser;
+        this.createdAt = System.nanoTime();
+        this.elementCache = new ElementCache(driver);
+        this.console = new ConsoleCollector(driver);
         waitFor = new Waits(driver);
     }
 
-    // Make sure the driver is closed properly
-    protected void finalize() throws Throwable {
+    /**
+     * Finish with the driver.  If it was leased from a pool it will be reset and handed back for the next test,
+     * otherwise the browser is quit.
+     */
+    public void shutDown(){
 
-        if (driver != null) {
-            shutDown();
+        // Only the first call counts, so a driver can't be quit or handed back to the pool twice
+        if (!active) {
+            return;
         }
 
-        super.finalize();
+        active = false;
+        DriverContext.remove(this);
+
+        if (pool != null) {
+            pool.release(this);
+        }
+        else {
+            quit();
+        }
     }
 
-    public void shutDown(){
-        driver.quit();
+    /**
+     * Quit the browser, regardless of whether or not it came from a pool.  If background quitting is enabled this
+     * returns straight away and the browser is closed on another thread.
+     */
+    void quit() {
+
+        if (driver == null) {
+            return;
+        }
+
+        if (DriverLifecycle.isAsyncQuitEnabled()) {
+            DriverLifecycle.quitInBackground(driver);
+        }
+        else {
+            driver.quit();
+        }
+
         driver = null;
     }
 
+    /**
+     * @return False once the driver has been shut down
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Called by the pool each time the driver is leased to a test
+     */
+    void leasedFrom(DriverPool pool) {
+        this.pool = pool;
+        active = true;
+        elementCache.reset();
+        console.clear();
+    }
+
+    long getCreatedAt() {
+        return createdAt;
+    }
+
     public Boolean browserIs(SupportedBrowsers browser) {
         return driverBrowser == browser;
     }
 
     public void get(String pageURL) {
+        elementCache.clear();
+        console.beforeNavigate();
         driver.get(pageURL);
+        console.afterNavigate(pageURL);
+    }
+
+    public void back() {
+        elementCache.clear();
+        driver.navigate().back();
+    }
+
+    public void forward() {
+        elementCache.clear();
+        driver.navigate().forward();
+    }
+
+    public void refresh() {
+        elementCache.clear();
+        driver.navigate().refresh();
     }
 
     public void switchToTab(String tab){
+        elementCache.clear();
         driver.switchTo().window(tab);
     }
 
@@ -59,6 +137,10 @@ public class DriverWrapper {
         driver.close();
     }
 
+    public String getCurrentTab(){
+        return driver.getWindowHandle();
+    }
+
     public Set<String> getTabs(){
         return driver.getWindowHandles();
     }
@@ -80,6 +162,14 @@ public class DriverWrapper {
         return driver.manage().getCookieNamed(cookieName).getValue();
     }
 
+    public void addCookie(Cookie cookie){
+        driver.manage().addCookie(cookie);
+    }
+
+    public Set<Cookie> getCookies(){
+        return driver.manage().getCookies();
+    }
+
     public void clearLocalStorage() {
         JavascriptExecutor jsExe = driver;
         jsExe.executeScript("window.localStorage.clear();");
@@ -100,6 +190,44 @@ public class DriverWrapper {
         return (String) jsExe.executeScript("return sessionStorage." + storageKey + ";");
     }
 
+    public Map<String, String> getAllLocalStorage() {
+        return getAllStorage("localStorage");
+    }
+
+    public Map<String, String> getAllSessionStorage() {
+        return getAllStorage("sessionStorage");
+    }
+
+    public void setLocalStorage(Map<String, String> values) {
+        setStorage("localStorage", values);
+    }
+
+    public void setSessionStorage(Map<String, String> values) {
+        setStorage("sessionStorage", values);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, String> getAllStorage(String storage) {
+        JavascriptExecutor jsExe = driver;
+        return new HashMap<>((Map<String, String>) jsExe.executeScript(
+                "var values = {};" +
+                "for (var i = 0; i < " + storage + ".length; i++) {" +
+                "  var key = " + storage + ".key(i);" +
+                "  values[key] = " + storage + ".getItem(key);" +
+                "}" +
+                "return values;"));
+    }
+
+    private void setStorage(String storage, Map<String, String> values) {
+
+        if (values.isEmpty()) {
+            return;
+        }
+
+        JavascriptExecutor jsExe = driver;
+        jsExe.executeScript("for (var key in arguments[0]) { " + storage + ".setItem(key, arguments[0][key]); }", values);
+    }
+
     /**
      * Runs a supplied JavaScript statement and returns the result as a string
      */
@@ -114,32 +242,67 @@ public class DriverWrapper {
 
     /**
      * Saves a screenshot of the browser window as a png with the provided filename.  The path to the screeshots folder
-     * should be specified in the config file
+     * should be specified in the config file.  The image is grabbed straight away but written to disk in the background.
      * @param imageName Filename for the screenshot without file extension
+     * @return Future which completes with the path of the saved screenshot
      */
-    public void takeScreenShot(String imageName){
+    public CompletableFuture<Path> takeScreenShot(String imageName){
+        return ScreenshotService.save(driver.getScreenshotAs(OutputType.BYTES), imageName);
+    }
 
-        File scrFile = driver.getScreenshotAs(OutputType.FILE);
+    /**
+     * Grabs a screenshot of the browser window without saving it, i.e. to compare it against a baseline
+     * @return Screenshot as a png
+     */
+    public byte[] getScreenShotBytes() {
+        return driver.getScreenshotAs(OutputType.BYTES);
+    }
+
+    /**
+     * @return Number of screenshot pixels for each CSS pixel, i.e. 2 on a high density display
+     */
+    public double getDevicePixelRatio() {
+        Object ratio = driver.executeScript("return window.devicePixelRatio;");
+        return ratio instanceof Number ? ((Number) ratio).doubleValue() : 1;
+    }
 
-        String folderPath = new ConfigManager().getScreenshotPath();
+    /**
+     * Get where each element is in the browser window, in CSS pixels, with a single script rather than a command per
+     * element.  Unlike WebElement.getRect(), which is relative to the top of the document, these are relative to the
+     * part of the page on screen, so they line up with a screenshot of the window however far it's been scrolled.
+     * @return The x, y, width and height of each element, in the same order as the elements
+     */
+    @SuppressWarnings("unchecked")
+    public List<double[]> getViewportBounds(List<WebElement> elements) {
 
-        int fileNum = 0;
-        File screenshot;
+        List<double[]> bounds = new ArrayList<>();
 
-        // Keep incrementing the file number until we get a unique filename
-        do {
-            // Write the image to a file
-            screenshot = new File(folderPath + File.separator + imageName + "-" + fileNum + ".png");
-            fileNum++;
+        if (elements.isEmpty()) {
+            return bounds;
         }
-        while(screenshot.isFile());
 
-        try {
-            FileUtils.copyFile(scrFile, screenshot);
-        } catch (IOException e) {
-            System.out.println("Error saving screenshot");
-            e.printStackTrace();
+        List<List<Number>> rects = (List<List<Number>>) driver.executeScript(
+                "return arguments[0].map(function(element) {" +
+                "  var rect = element.getBoundingClientRect();" +
+                "  return [rect.left, rect.top, rect.width, rect.height];" +
+                "});", elements);
+
+        for (List<Number> rect : rects) {
+            bounds.add(new double[] {rect.get(0).doubleValue(), rect.get(1).doubleValue(), rect.get(2).doubleValue(),
+                    rect.get(3).doubleValue()});
         }
+
+        return bounds;
+    }
+
+    /**
+     * Saves a screenshot of just the element located by the provided By locator
+     * @param locator Locator for the element to capture
+     * @param imageName Filename for the screenshot without file extension
+     * @return Future which completes with the path of the saved screenshot
+     */
+    public CompletableFuture<Path> takeElementScreenShot(By locator, String imageName){
+        return ScreenshotService.save(driver.findElement(locator).getScreenshotAs(OutputType.BYTES), imageName);
     }
 
     public boolean urlContains(String search) {
@@ -154,12 +317,19 @@ public class DriverWrapper {
     // Wrapper methods for common WebDriver functionality
     // *****************************************************************************************************************
 
+    /**
+     * Start recording a batch of reads and simple writes which are sent to the browser in a single round trip
+     */
+    public CommandBatch batch() {
+        return new CommandBatch(this, driver);
+    }
+
     /**
      * Clicks on the element located by the provided By locator
      * @param locator Locator for the element to click on
      */
     public void clickOn(By locator){
-        clickOn(driver.findElement(locator));
+        clickOn(findElement(locator));
     }
 
     /**
@@ -168,6 +338,9 @@ public class DriverWrapper {
      */
     public void clickOn(WebElement element){
         element.click();
+
+        // The click may have loaded a new page
+        elementCache.clear();
     }
 
     public void clickOnAndWaitFor(By clickOnLocator, By waitForLocator){
@@ -184,12 +357,37 @@ public class DriverWrapper {
         }
     }
 
+    /**
+     * Finds the element located by the provided By locator.  Elements already found on the current page are reused
+     * rather than asking the browser again, and are found again automatically if they've gone stale.
+     * @param locator Locator for the element
+     */
     public WebElement findElement (By locator) {
-        return driver.findElement(locator);
+        return elementCache.findElement(locator);
     }
 
+    /**
+     * Finds all the elements located by the provided By locator.  This always asks the browser, so it can safely be
+     * used to check whether an element is present.
+     * @param locator Locator for the elements
+     */
     public List<WebElement> findElements (By locator) {
-        return driver.findElements(locator);
+        return elementCache.findElements(locator);
+    }
+
+    /**
+     * @return Number of round trips to the browser saved by reusing elements since the driver was created, or was
+     * last leased from the pool
+     */
+    public long getElementLookupsSaved() {
+        return elementCache.getRoundTripsSaved();
+    }
+
+    /**
+     * @return Summary of how well the element cache has worked for the current test
+     */
+    public String getElementCacheStats() {
+        return elementCache.toString();
     }
 
     public String getTitle() {
@@ -197,11 +395,38 @@ public class DriverWrapper {
     }
 
     /**
-     * Get any errors which are present in the browser console
+     * @return Console messages and JavaScript errors collected for this driver, if framework.consoleCapture is set
+     */
+    public ConsoleCollector getConsole() {
+        return console;
+    }
+
+    /**
+     * Record which page object the test is using, so console entries and command metrics can be matched up with it
+     */
+    public void setCurrentPage(String page) {
+        console.setPage(page);
+        CommandMetrics.setPage(driver, page);
+    }
+
+    /**
+     * Get any errors which are present in the browser console.  If console capture is turned on these come from the
+     * entries already collected, for any browser, otherwise the log is fetched from the browser which only works for
+     * Chrome.
      * @return List of errors collected from the browser console
      */
     public List<LogEntry> getBrowserConsoleErrors() {
 
+        if (console.isCapturing()) {
+            List<LogEntry> errors = new ArrayList<>();
+
+            for (ConsoleEntry entry : console.getEntries(Level.SEVERE)) {
+                errors.add(new LogEntry(entry.getLevel(), entry.getTimestamp().toEpochMilli(), entry.getMessage()));
+            }
+
+            return errors;
+        }
+
         if (browserIs(SupportedBrowsers.CHROME) || browserIs(SupportedBrowsers.CHROME_HEADLESS)) {
             return driver.manage().logs().get(LogType.BROWSER).getAll();
         }
@@ -0,0 +1,113 @@
+package framework;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.SearchContext;
+import org.openqa.selenium.WebElement;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers the elements a driver has already found so that looking up the same locator again doesn't need another
+ * round trip to the browser, which is slow over the Selenium Grid.  Elements are handed out as CachedElements, which
+ * find the element again if the page has changed underneath them and the handle has gone stale.
+ *
+ * The cache is cleared whenever the driver navigates, goes back or forward, refreshes or switches tab, and after any
+ * click or submit as they may load a new page.  Navigation the framework can't see, such as a JavaScript redirect,
+ * costs a failed command and a lookup for each cached element used afterwards, as it's found to be stale.
+ *
+ * Only lookups for a single element are served from the cache.  findElements() always goes to the browser, as it's
+ * used to check whether elements are present, but the first element it finds is remembered.
+ */
+class ElementCache {
+
+    private final SearchContext context;
+    private final Map<By, CachedElement> elements = new ConcurrentHashMap<>();
+
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder staleRefinds = new LongAdder();
+
+    ElementCache(SearchContext context) {
+        this.context = context;
+    }
+
+    WebElement findElement(By locator) {
+
+        lookups.increment();
+        CachedElement element = elements.get(locator);
+
+        if (element != null) {
+            hits.increment();
+            return element;
+        }
+
+        element = new CachedElement(this, locator, context.findElement(locator));
+        elements.put(locator, element);
+        return element;
+    }
+
+    List<WebElement> findElements(By locator) {
+
+        lookups.increment();
+        List<WebElement> found = context.findElements(locator);
+
+        if (found.isEmpty()) {
+            elements.remove(locator);
+        }
+        else {
+            elements.put(locator, new CachedElement(this, locator, found.get(0)));
+        }
+
+        return found;
+    }
+
+    /**
+     * Find the element for a locator again after its handle has gone stale
+     */
+    WebElement refind(By locator) {
+        staleRefinds.increment();
+        return context.findElement(locator);
+    }
+
+    /**
+     * Forget all the elements we've found, i.e. because the page has changed
+     */
+    void clear() {
+        elements.clear();
+    }
+
+    /**
+     * Forget all the elements and start the stats again, i.e. when a pooled driver is handed to a new test
+     */
+    void reset() {
+        clear();
+        lookups.reset();
+        hits.reset();
+        staleRefinds.reset();
+    }
+
+    long getLookups() {
+        return lookups.sum();
+    }
+
+    /**
+     * @return Number of lookups answered from the cache, less any which then had to be found again because they were
+     * stale, i.e. the number of round trips to the browser we've saved
+     */
+    long getRoundTripsSaved() {
+        return Math.max(0, hits.sum() - staleRefinds.sum());
+    }
+
+    long getStaleRefinds() {
+        return staleRefinds.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "Element cache saved " + getRoundTripsSaved() + " of " + getLookups() + " lookups ("
+                + getStaleRefinds() + " stale)";
+    }
+}
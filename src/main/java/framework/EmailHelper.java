@@ -1,16 +1,10 @@
 package framework;
 
+import framework.fixtures.FixtureServer;
 import models.User;
 
 import javax.mail.*;
-import javax.mail.search.FlagTerm;
 import java.io.IOException;
-import java.util.Properties;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-
-import static java.util.concurrent.TimeUnit.SECONDS;
 
 /**
  * Simple helper class for interacting with an IMAP email server
@@ -22,57 +16,32 @@ import static java.util.concurrent.TimeUnit.SECONDS;
  */
 public class EmailHelper {
 
-    private Folder inbox;
+    private Inbox mailbox;
 
     private final String PASSWORD_RESET_TITLE = "Forgot Password from the-internet";
-    private final long SEARCH_FREQUENCY = 5000;
     private final long SEARCH_TIMEOUT = 30000;
 
+    /**
+     * Create a helper for the inbox defined in the config.  All helpers for the same inbox share a single connection,
+     * which watches for new emails on behalf of every test.  If the tests are running against the FixtureServer its
+     * local inbox is used instead.
+     */
     public EmailHelper() {
-
-        try {
-            ConfigManager props = new ConfigManager();
-            Properties mailServerProps = new Properties();
-
-            mailServerProps.put("mail.store.protocol", "imaps");
-            mailServerProps.put("mail.imap.ssl.enable", "true");
-            //mailServerProps.put("mail.debug", "true");
-
-            Session session = Session.getInstance(mailServerProps);
-            Store store = session.getStore("imaps");
-
-            store.connect(props.getImapHost(), props.getImapPort(), props.getImapUsername(), props.getImapPassword());
-
-            inbox = store.getFolder("Inbox");
-            inbox.open(Folder.READ_WRITE);
-        }
-        catch (MessagingException e) {
-            e.printStackTrace();
-        }
-    }
-
-    // Make sure the inbox is closed properly
-    protected void finalize() throws Throwable {
-
-        if (inbox != null) {
-            closeConnection();
-        }
-
-        super.finalize();
+        FixtureServer fixtureServer = FixtureServer.getShared();
+        mailbox = fixtureServer != null ? fixtureServer.getInbox() : MailboxWatcher.forConfiguredInbox();
     }
 
+    /**
+     * The connection is shared with other tests and closed when the test run finishes, so this just detaches the
+     * helper from it
+     */
     public void closeConnection() {
-
-        try {
-            inbox.close();
-            inbox = null;
-        }
-        catch (MessagingException e) { e.printStackTrace(); }
+        mailbox = null;
     }
 
     public String waitForPasswordResetEmail(User user) {
 
-        Message email = waitForEmail(user.getEmailAddress(), PASSWORD_RESET_TITLE);
+        Message email = mailbox.waitForEmail(user.getEmailAddress(), PASSWORD_RESET_TITLE, SEARCH_TIMEOUT);
         String messageBody = "";
 
         if (email == null) {
@@ -97,50 +66,4 @@ public class EmailHelper {
 
         return messageBody;
     }
-
-
-    private Message waitForEmail(String recipient, String subject){
-
-        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
-        Object notifier = new Object();
-        final Message[] email = new Message[1];
-
-        // We'll use a runnable to check for the presence of the email so that we can execute it in a separate thread
-        Runnable searchForEmail = new Runnable() {
-            public void run() {
-                synchronized (notifier) {
-                    try {
-                        // Fetch unseen messages from inbox
-                        Message[] messages = inbox.search(new FlagTerm(new Flags(Flags.Flag.SEEN), false));
-
-                        for (Message message : messages) {
-
-                            if (message.getSubject().equalsIgnoreCase(subject) && message.getRecipients(Message.RecipientType.TO)[0].toString().equalsIgnoreCase(recipient)) {
-                                email[0] = message;
-                                message.setFlag(Flags.Flag.SEEN, true); // Once we've found the email mark it as read
-                                notifier.notifyAll();
-                            }
-                        }
-                    }
-                    catch (MessagingException e) {
-                        e.printStackTrace();
-                    }
-                }
-            }
-        };
-
-        // Create a thread which will execute the runnable every five seconds
-        final ScheduledFuture<?> scheduledThread = scheduler.scheduleAtFixedRate(searchForEmail, 5, SEARCH_FREQUENCY, SECONDS);
-
-        // Start our scheduled thread.  We'll resume the main thread once the email has been found or we hit our timeout
-        synchronized (notifier) {
-            try {
-                notifier.wait(SEARCH_TIMEOUT);
-                scheduledThread.cancel(false);
-            }
-            catch (InterruptedException e) { e.printStackTrace(); }
-        }
-
-        return email[0];
-    }
-}
\ No newline at end of file
+}
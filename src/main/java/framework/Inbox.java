@@ -0,0 +1,18 @@
+package framework;
+
+import javax.mail.Message;
+
+/**
+ * An inbox which tests can wait for emails to arrive in
+ */
+public interface Inbox {
+
+    /**
+     * Wait for an email to arrive.  Each email is only handed to one caller.
+     * @param recipient Address the email was sent to
+     * @param subject Subject, or part of the subject, of the email
+     * @param timeoutMillis Longest time to wait for
+     * @return The email, or null if it didn't arrive in time
+     */
+    Message waitForEmail(String recipient, String subject, long timeoutMillis);
+}
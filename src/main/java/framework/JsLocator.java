@@ -0,0 +1,65 @@
+package framework;
+
+import org.openqa.selenium.By;
+
+/**
+ * Looks up elements from inside the browser, so scripts can find elements themselves rather than us sending a separate
+ * find command first.  Only locators which can be resolved the same way in JavaScript are supported.  Since Selenium 4
+ * id, name and class name locators are sent to the browser as CSS selectors, so they're covered too.
+ */
+final class JsLocator {
+
+    // find(using, value) returns the first matching element or null, findAll(using, value) returns an array
+    static final String FIND_FUNCTIONS =
+            "function find(using, value) {" +
+            "  switch (using) {" +
+            "    case 'css selector': return document.querySelector(value);" +
+            "    case 'xpath': return document.evaluate(value, document, null, XPathResult.FIRST_ORDERED_NODE_TYPE, null).singleNodeValue;" +
+            "    case 'tag name': return document.getElementsByTagName(value)[0] || null;" +
+            "  }" +
+            "  throw new Error('Unsupported locator: ' + using);" +
+            "}" +
+            "function findAll(using, value) {" +
+            "  switch (using) {" +
+            "    case 'css selector': return Array.prototype.slice.call(document.querySelectorAll(value));" +
+            "    case 'xpath':" +
+            "      var nodes = document.evaluate(value, document, null, XPathResult.ORDERED_NODE_SNAPSHOT_TYPE, null);" +
+            "      var found = [];" +
+            "      for (var i = 0; i < nodes.snapshotLength; i++) { found.push(nodes.snapshotItem(i)); }" +
+            "      return found;" +
+            "    case 'tag name': return Array.prototype.slice.call(document.getElementsByTagName(value));" +
+            "  }" +
+            "  throw new Error('Unsupported locator: ' + using);" +
+            "}";
+
+    private JsLocator() {
+
+    }
+
+    /**
+     * @return True if the locator can be resolved by the find functions
+     */
+    static boolean isSupported(By locator) {
+
+        if (!(locator instanceof By.Remotable)) {
+            return false;
+        }
+
+        switch (using(locator)) {
+            case "css selector":
+            case "xpath":
+            case "tag name":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    static String using(By locator) {
+        return ((By.Remotable) locator).getRemoteParameters().using();
+    }
+
+    static Object value(By locator) {
+        return ((By.Remotable) locator).getRemoteParameters().value();
+    }
+}
@@ -0,0 +1,390 @@
+package framework;
+
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.IMAPStore;
+
+import javax.mail.*;
+import javax.mail.event.MessageCountAdapter;
+import javax.mail.event.MessageCountEvent;
+import javax.mail.internet.InternetAddress;
+import javax.mail.search.AndTerm;
+import javax.mail.search.FlagTerm;
+import javax.mail.search.RecipientStringTerm;
+import javax.mail.search.SearchTerm;
+import javax.mail.search.SubjectTerm;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Watches a single IMAP inbox on one connection and hands new emails out to any tests which are waiting for them.
+ * Rather than every test opening its own connection and polling, tests register what they're waiting for (recipient
+ * and subject) and are woken up as soon as a matching email arrives.
+ *
+ * If the server supports IMAP IDLE it tells us about new mail as soon as it arrives.  If it doesn't we fall back to
+ * polling, starting quickly and backing off while nothing is arriving.
+ *
+ * Shared inboxes can hold thousands of unread emails, so we avoid fetching messages one at a time.  We only ever look
+ * at messages with a UID above the highest one we've already checked, the envelopes for each batch of new messages are
+ * fetched in a single round trip, and emails which arrived before a test started waiting are found with a server side
+ * search rather than by scanning the inbox.
+ */
+public class MailboxWatcher implements Inbox {
+
+    private static final long MIN_POLL_INTERVAL_MILLIS = 250;
+    private static final long MAX_POLL_INTERVAL_MILLIS = 5000;
+
+    private static final Map<String, MailboxWatcher> watchers = new ConcurrentHashMap<>();
+
+    private static final FetchProfile ENVELOPE_PROFILE = new FetchProfile();
+
+    static {
+        ENVELOPE_PROFILE.add(FetchProfile.Item.ENVELOPE);
+        ENVELOPE_PROFILE.add(FetchProfile.Item.FLAGS);
+        ENVELOPE_PROFILE.add(UIDFolder.FetchProfileItem.UID);
+    }
+
+    private final String host;
+    private final int port;
+    private final String username;
+    private final String password;
+
+    private final CopyOnWriteArrayList<Waiter> waiters = new CopyOnWriteArrayList<>();
+
+    private IMAPStore store;
+    private IMAPFolder inbox;
+    private volatile boolean running = true;
+    private volatile long pollInterval = MIN_POLL_INTERVAL_MILLIS;
+
+    // Highest UID we've already checked, so we only ever look at messages which are new to us
+    private volatile long lastCheckedUid;
+
+    private MailboxWatcher(String host, int port, String username, String password) {
+        this.host = host;
+        this.port = port;
+        this.username = username;
+        this.password = password;
+
+        connect();
+
+        Thread watchThread = new Thread(this::watch, "mailbox-watcher-" + username);
+        watchThread.setDaemon(true);
+        watchThread.start();
+    }
+
+    /**
+     * Get the watcher for the inbox defined in the config, starting it the first time it's needed
+     */
+    public static MailboxWatcher forConfiguredInbox() {
+        ConfigManager props = ConfigManager.get();
+        return forInbox(props.getImapHost(), props.getImapPort(), props.getImapUsername(), props.getImapPassword());
+    }
+
+    /**
+     * Get the watcher for an inbox, starting it the first time it's needed.  All tests using the same inbox share the
+     * one watcher and connection.
+     */
+    public static MailboxWatcher forInbox(String host, int port, String username, String password) {
+        return watchers.computeIfAbsent(username + "@" + host + ":" + port,
+                key -> new MailboxWatcher(host, port, username, password));
+    }
+
+    private void connect() {
+
+        try {
+            Properties mailServerProps = new Properties();
+
+            mailServerProps.put("mail.store.protocol", "imaps");
+            mailServerProps.put("mail.imap.ssl.enable", "true");
+            //mailServerProps.put("mail.debug", "true");
+
+            Session session = Session.getInstance(mailServerProps);
+            store = (IMAPStore) session.getStore("imaps");
+
+            store.connect(host, port, username, password);
+
+            inbox = (IMAPFolder) store.getFolder("Inbox");
+            inbox.open(Folder.READ_WRITE);
+
+            // Everything already in the inbox is only of interest to the server side search when a test starts waiting
+            lastCheckedUid = inbox.getUIDNext() - 1;
+
+            // New messages are reported here whether we found out about them through IDLE or a poll
+            inbox.addMessageCountListener(new MessageCountAdapter() {
+                @Override
+                public void messagesAdded(MessageCountEvent event) {
+                    checkNewMessages(event.getMessages());
+                }
+            });
+
+            Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+        }
+        catch (MessagingException e) {
+            throw new IllegalStateException("Unable to connect to inbox " + username + "@" + host, e);
+        }
+    }
+
+    /**
+     * Wait for an email to arrive.  Emails already sat unread in the inbox are checked first.  The email is marked as
+     * read once it's been found, so it won't be handed to any other test.
+     * @param recipient Email address the email was sent to
+     * @param subject Subject, or part of the subject, of the email
+     * @param timeoutMillis Max length of time to wait for
+     * @return The email, or null if it didn't arrive in time
+     */
+    @Override
+    public Message waitForEmail(String recipient, String subject, long timeoutMillis) {
+
+        Waiter waiter = new Waiter(recipient, subject);
+        waiters.add(waiter);
+
+        // Speed polling back up now that somebody's waiting
+        pollInterval = MIN_POLL_INTERVAL_MILLIS;
+
+        try {
+            // The email may have arrived before we started waiting, so ask the server to look for it
+            SearchTerm search = new AndTerm(new SearchTerm[] {
+                    new FlagTerm(new Flags(Flags.Flag.SEEN), false),
+                    new SubjectTerm(subject),
+                    new RecipientStringTerm(Message.RecipientType.TO, recipient)
+            });
+
+            try {
+                synchronized (this) {
+                    dispatch(inbox.search(search));
+                }
+            }
+            catch (FolderClosedException e) {
+                // The watcher reopens the inbox and catches up on anything new, so carry on waiting
+                System.out.println("Inbox closed by server while searching, waiting for it to reopen");
+            }
+
+            return waiter.email.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        catch (TimeoutException e) {
+            return null;
+        }
+        catch (MessagingException | ExecutionException e) {
+            e.printStackTrace();
+            return null;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        finally {
+            waiters.remove(waiter);
+        }
+    }
+
+    /**
+     * Check any messages we haven't seen before, i.e. after the server has told us new messages have arrived
+     */
+    private synchronized void checkNewMessages(Message[] messages) {
+
+        try {
+            // Get the UIDs, envelopes and flags for the whole batch in one go, rather than a round trip per message
+            inbox.fetch(messages, ENVELOPE_PROFILE);
+
+            List<Message> newMessages = new ArrayList<>();
+            long highestUid = lastCheckedUid;
+
+            for (Message message : messages) {
+                long uid = inbox.getUID(message);
+
+                if (uid > lastCheckedUid) {
+                    newMessages.add(message);
+                    highestUid = Math.max(highestUid, uid);
+                }
+            }
+
+            lastCheckedUid = highestUid;
+            dispatch(newMessages.toArray(new Message[0]));
+        }
+        catch (MessagingException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Poll for messages with a UID above the highest one we've already checked
+     */
+    private synchronized void pollNewMessages() throws MessagingException {
+
+        // The folder only learns about new mail when it talks to the server, and UIDNEXT is never refreshed after the
+        // folder's opened, so send a NOOP first.  getMessageCount() would skip the NOOP if the last command was less
+        // than a second ago.  A range past the last UID still returns the newest message, which checkNewMessages skips
+        // as it's already been seen.
+        inbox.doCommand(protocol -> {
+            protocol.noop();
+            return null;
+        });
+
+        checkNewMessages(inbox.getMessagesByUID(lastCheckedUid + 1, UIDFolder.LASTUID));
+    }
+
+    /**
+     * Hand any of the messages which match a waiting test to that test
+     */
+    private synchronized void dispatch(Message[] messages) {
+
+        if (waiters.isEmpty() || messages.length == 0) {
+            return;
+        }
+
+        try {
+            // Get the envelopes and flags for the whole batch in one go, rather than a round trip per message.  Anything
+            // we've already fetched is served from the cache.
+            inbox.fetch(messages, ENVELOPE_PROFILE);
+
+            for (Message message : messages) {
+
+                if (message.isSet(Flags.Flag.SEEN)) {
+                    continue;
+                }
+
+                Address[] recipients = message.getRecipients(Message.RecipientType.TO);
+                String subject = message.getSubject();
+
+                if (recipients == null || recipients.length == 0 || subject == null) {
+                    continue;
+                }
+
+                String recipient = (recipients[0] instanceof InternetAddress)
+                        ? ((InternetAddress) recipients[0]).getAddress()
+                        : recipients[0].toString();
+
+                for (Waiter waiter : waiters) {
+                    if (waiter.matches(recipient, subject) && !waiter.email.isDone()) {
+                        message.setFlag(Flags.Flag.SEEN, true); // Once we've found the email mark it as read
+                        waiter.email.complete(message);
+                        break;
+                    }
+                }
+            }
+        }
+        catch (MessagingException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Keep an eye on the inbox until we're closed, using IDLE if the server supports it
+     */
+    private void watch() {
+
+        boolean idleSupported = true;
+
+        while (running) {
+            try {
+                if (!inbox.isOpen()) {
+                    inbox.open(Folder.READ_WRITE);
+
+                    // Nothing tells us about mail which arrived while the connection was down
+                    pollNewMessages();
+                }
+
+                if (idleSupported) {
+                    try {
+                        // Blocks until the server tells us something has changed, at which point any new messages are
+                        // passed to our listener
+                        inbox.idle();
+                        continue;
+                    }
+                    catch (MessagingException e) {
+                        // A dropped connection isn't a sign the server can't IDLE, so reopen and carry on using it
+                        if (!inbox.isOpen()) {
+                            System.out.println("Inbox connection dropped while idle, reopening: " + e.getMessage());
+                            continue;
+                        }
+
+                        System.out.println("IMAP IDLE not available, falling back to polling: " + e.getMessage());
+                        idleSupported = false;
+                    }
+                }
+
+                long before = lastCheckedUid;
+                Thread.sleep(pollInterval);
+
+                pollNewMessages();
+
+                // Back off while nothing is arriving, down to the max interval
+                if (lastCheckedUid == before) {
+                    pollInterval = Math.min(pollInterval * 2, MAX_POLL_INTERVAL_MILLIS);
+                }
+                else {
+                    pollInterval = MIN_POLL_INTERVAL_MILLIS;
+                }
+            }
+            catch (FolderClosedException e) {
+                System.out.println("Inbox closed by server, reopening");
+            }
+            catch (MessagingException e) {
+                if (running) {
+                    e.printStackTrace();
+                    sleepQuietly(MAX_POLL_INTERVAL_MILLIS);
+                }
+            }
+            catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Stop watching the inbox and close the connection
+     */
+    public void close() {
+        running = false;
+
+        try {
+            if (inbox != null && inbox.isOpen()) {
+                inbox.close();
+            }
+
+            if (store != null) {
+                store.close();
+            }
+        }
+        catch (MessagingException e) { e.printStackTrace(); }
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A test waiting for an email
+     */
+    private static class Waiter {
+
+        private final String recipient;
+        private final String subject;
+        private final CompletableFuture<Message> email = new CompletableFuture<>();
+
+        private Waiter(String recipient, String subject) {
+            this.recipient = recipient;
+            this.subject = subject;
+        }
+
+        /**
+         * The subject matches if it contains the one we're waiting for, as the server side SubjectTerm search does
+         */
+        private boolean matches(String messageRecipient, String messageSubject) {
+            return messageSubject.toLowerCase().contains(subject.toLowerCase())
+                    && messageRecipient.equalsIgnoreCase(recipient);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package framework;
+
+import org.testng.ITestContext;
+import org.testng.ITestListener;
+import org.testng.ITestResult;
+
+/**
+ * TestNG listener which starts the browser for the next test while the current test is still running, so that by the
+ * time the next test asks DriverFactory for a driver it's already up and waiting.  Add it to a test class with
+ * {@literal @}Listeners(PrestartDriverListener.class) or to the listeners section of the suite xml.
+ *
+ * Any drivers which were started but never used are quit once the tests have finished.
+ */
+public class PrestartDriverListener implements ITestListener {
+
+    @Override
+    public void onStart(ITestContext context) {
+        DriverLifecycle.setPrestartEnabled(true);
+    }
+
+    @Override
+    public void onTestStart(ITestResult result) {
+        DriverLifecycle.prestartNextDriver();
+    }
+
+    @Override
+    public void onFinish(ITestContext context) {
+        DriverLifecycle.setPrestartEnabled(false);
+        DriverLifecycle.discardPrestartedDrivers();
+        DriverLifecycle.awaitBackgroundQuits();
+    }
+}
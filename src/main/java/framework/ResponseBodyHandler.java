@@ -0,0 +1,25 @@
+package framework;
+
+import org.apache.http.Header;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Reads the body of a response as it arrives, rather than having the whole body held in memory.  Used with
+ * RestAPIHelper.executeStreaming() for endpoints which return more data than we want to buffer.
+ * @param <T> Type of the result the handler produces from the body
+ */
+@FunctionalInterface
+public interface ResponseBodyHandler<T> {
+
+    /**
+     * @param responseCode HTTP response code
+     * @param headers Response headers
+     * @param body Response body, already decompressed if the server gzipped or deflated it.  Null if the response had
+     *             no body.  The stream is only valid until this method returns.
+     * @return Result of reading the body
+     */
+    T handle(int responseCode, List<Header> headers, InputStream body) throws IOException;
+}
@@ -1,27 +1,418 @@
 package framework;
 
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.ParseException;
+import org.apache.http.client.CookieStore;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.*;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.BasicCookieStore;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.impl.cookie.BasicClientCookie;
 import org.apache.http.message.BasicHeader;
-import org.apache.http.util.EntityUtils;
+import org.apache.http.protocol.HttpContext;
+import org.json.JSONTokener;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
  * Simple helper class for a RESTful CRUD API
+ *
+ * All helper instances share a single pooled HTTP client, so connections are kept alive and reused between requests
+ * rather than paying for a new TCP/TLS handshake every time.  Each instance still has its own cookie store.  The size
+ * of the pool can be set with the framework.httpMaxConnections and framework.httpMaxConnectionsPerRoute system
+ * properties.
+ *
+ * As well as the single request helper methods, immutable RestRequests can be submitted with the static execute methods.
+ * executeAsync() runs requests on a shared thread pool and returns a future, so many requests can be in flight at once,
+ * i.e. when seeding test data.  The number of requests in flight is limited by the framework.httpMaxConcurrency system
+ * property.
  */
 public class RestAPIHelper {
 
+    private static final long IDLE_CONNECTION_TIMEOUT_SECONDS = 30;
+    private static final long DEFAULT_KEEP_ALIVE_MILLIS = 30000;
+    private static final long DRAIN_LIMIT_BYTES = 64 * 1024;
+
+    private static final RequestConfig DEFAULT_REQUEST_CONFIG = RequestConfig.custom()
+            .setConnectionRequestTimeout(30000).build();
+    private static final RequestConfig NO_REDIRECTS_REQUEST_CONFIG = RequestConfig.copy(DEFAULT_REQUEST_CONFIG)
+            .setRedirectsEnabled(false).build();
+
+    private static final PoolingHttpClientConnectionManager connectionManager = createConnectionManager();
+    private static final CloseableHttpClient httpClient = createHttpClient();
+    private static final ExecutorService requestExecutor = createRequestExecutor();
+
     private BasicCookieStore requestCookies;
     private HashSet<BasicHeader> requestHeaders;
-    private CloseableHttpResponse response;
     private String requestURL;
     private String requestBody;
+    private RestResponse response;
+
+    private static PoolingHttpClientConnectionManager createConnectionManager() {
+        PoolingHttpClientConnectionManager manager = new PoolingHttpClientConnectionManager();
+        manager.setMaxTotal(Integer.getInteger("framework.httpMaxConnections", 200));
+        manager.setDefaultMaxPerRoute(Integer.getInteger("framework.httpMaxConnectionsPerRoute", 50));
+
+        // Check connections which have been sat in the pool for a while are still open before we reuse them
+        manager.setValidateAfterInactivity(2000);
+        return manager;
+    }
+
+    /**
+     * @return Max number of connections the shared client will open to a single host
+     */
+    public static int getMaxConnectionsPerRoute() {
+        return connectionManager.getDefaultMaxPerRoute();
+    }
+
+    private static CloseableHttpClient createHttpClient() {
+
+        // Use the keep-alive time the server gives us, or a sensible default if it doesn't give one
+        DefaultConnectionKeepAliveStrategy keepAlive = new DefaultConnectionKeepAliveStrategy() {
+            @Override
+            public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+                long duration = super.getKeepAliveDuration(response, context);
+                return duration > 0 ? duration : DEFAULT_KEEP_ALIVE_MILLIS;
+            }
+        };
+
+        CloseableHttpClient client = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setKeepAliveStrategy(keepAlive)
+                .setDefaultRequestConfig(DEFAULT_REQUEST_CONFIG)
+                .evictExpiredConnections()
+                .evictIdleConnections(IDLE_CONNECTION_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .build();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                client.close();
+            }
+            catch (IOException e) { e.printStackTrace(); }
+        }));
+
+        return client;
+    }
+
+    private static ExecutorService createRequestExecutor() {
+        AtomicInteger count = new AtomicInteger();
+
+        return Executors.newFixedThreadPool(Integer.getInteger("framework.httpMaxConcurrency", 32), runnable -> {
+            Thread thread = new Thread(runnable, "rest-request-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Submit a request and wait for the response, using a new cookie store
+     * @param request Request to submit
+     * @return Response to the request
+     */
+    public static RestResponse execute(RestRequest request) {
+        return execute(request, new BasicCookieStore());
+    }
+
+    /**
+     * Submit a request and wait for the response.  The response body is buffered in full, up to the request's max body
+     * size, and the connection handed back to the pool before this returns.
+     * @param request Request to submit
+     * @param cookies Cookies to send with the request, which will be updated with any cookies set by the response
+     * @return Response to the request
+     */
+    public static RestResponse execute(RestRequest request, CookieStore cookies) {
+
+        HttpClientContext context = createContext(cookies);
+
+        return executeStreaming(request, context, (responseCode, headers, body) -> {
+
+            byte[] bodyBytes = null;
+            Charset charset = StandardCharsets.ISO_8859_1;
+
+            if (body != null) {
+                bodyBytes = readBounded(body, request.getMaxBodySize(), request);
+                charset = getCharset(headers);
+            }
+
+            // The handler runs once any redirects have been followed, so the last one is where the response came from
+            List<URI> redirects = context.getRedirectLocations();
+            String url = redirects == null || redirects.isEmpty()
+                    ? request.getUrl() : redirects.get(redirects.size() - 1).toString();
+
+            return new RestResponse(request, url, responseCode, headers, bodyBytes, charset);
+        });
+    }
+
+    /**
+     * Submit a request and hand the response body to the supplied handler as it arrives, so it never has to be held
+     * in memory all at once.  Compressed responses are decoded on the fly.
+     * @param request Request to submit
+     * @param cookies Cookies to send with the request, which will be updated with any cookies set by the response
+     * @param handler Handler which reads the response body
+     * @return Whatever the handler returns
+     */
+    public static <T> T executeStreaming(RestRequest request, CookieStore cookies, ResponseBodyHandler<T> handler) {
+        return executeStreaming(request, createContext(cookies), handler);
+    }
+
+    /**
+     * Cookies belong to the caller rather than the shared client, so each request gets its own context holding them
+     */
+    private static HttpClientContext createContext(CookieStore cookies) {
+        HttpClientContext context = HttpClientContext.create();
+        context.setCookieStore(cookies);
+        return context;
+    }
+
+    private static <T> T executeStreaming(RestRequest request, HttpClientContext context,
+                                          ResponseBodyHandler<T> handler) {
+
+        HttpRequestBase httpRequest = createHttpRequest(request);
+
+        try (CloseableHttpResponse httpResponse = httpClient.execute(httpRequest, context)) {
+
+            // If the server gzipped or deflated the body the client has already swapped in a decompressing entity and
+            // removed the headers describing the compressed body
+            List<Header> headers = new ArrayList<>(Arrays.asList(httpResponse.getAllHeaders()));
+            HttpEntity entity = httpResponse.getEntity();
+
+            if (entity == null) {
+                return handler.handle(httpResponse.getStatusLine().getStatusCode(), headers, null);
+            }
+
+            try (InputStream body = entity.getContent()) {
+                T result;
+
+                // Closing the body would otherwise read the rest of it, which is what a handler giving up on a body
+                // over its size limit is trying to avoid
+                try {
+                    result = handler.handle(httpResponse.getStatusLine().getStatusCode(), headers, body);
+                }
+                catch (IOException | RuntimeException e) {
+                    httpRequest.abort();
+                    throw e;
+                }
+
+                // Reading the entity to the end lets the connection go back into the pool for the next request.  If
+                // the handler stopped well short of the end we'd rather drop the connection than read the rest of a
+                // huge body.
+                if (body.skip(DRAIN_LIMIT_BYTES) >= DRAIN_LIMIT_BYTES || body.read() != -1) {
+                    httpRequest.abort();
+                }
+
+                return result;
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Error submitting request: " + request, e);
+        }
+    }
+
+    /**
+     * Submit a request which returns a JSON array and hand each element to the consumer as it's parsed, so only one
+     * element is held in memory at a time.  Useful for large exports.
+     * @param request Request to submit
+     * @param elementConsumer Consumer for each element of the array (JSONObject, JSONArray, String, Number, etc)
+     * @return Number of elements in the array
+     */
+    public static int streamJSONArray(RestRequest request, Consumer<Object> elementConsumer) {
+
+        return executeStreaming(request, new BasicCookieStore(), (responseCode, headers, body) -> {
+
+            if (responseCode < 200 || responseCode >= 300 || body == null) {
+                throw new IllegalStateException("Unable to stream JSON from " + request + ", response code " + responseCode);
+            }
+
+            JSONTokener tokener = new JSONTokener(new InputStreamReader(body, getCharset(headers)));
+            int count = 0;
+
+            if (tokener.nextClean() != '[') {
+                throw tokener.syntaxError("Response body is not a JSON array");
+            }
+
+            if (tokener.nextClean() == ']') {
+                return count;
+            }
+
+            tokener.back();
+
+            while (true) {
+                elementConsumer.accept(tokener.nextValue());
+                count++;
+
+                char next = tokener.nextClean();
+
+                if (next == ']') {
+                    return count;
+                }
+
+                if (next != ',') {
+                    throw tokener.syntaxError("Expected ',' or ']' in JSON array");
+                }
+            }
+        });
+    }
+
+    /**
+     * Read the whole of a body into memory, failing if it's bigger than we're willing to hold
+     */
+    private static byte[] readBounded(InputStream body, long maxBodySize, RestRequest request) throws IOException {
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        long total = 0;
+        int read;
+
+        while ((read = body.read(chunk)) != -1) {
+            total += read;
+
+            if (total > maxBodySize) {
+                throw new IllegalStateException("Response body for " + request + " is larger than " + maxBodySize
+                        + " bytes, use RestAPIHelper.executeStreaming() to read it");
+            }
+
+            buffer.write(chunk, 0, read);
+        }
+
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Get the charset from the Content-Type header, defaulting to ISO-8859-1 as per the HTTP spec
+     */
+    private static Charset getCharset(List<Header> headers) {
+
+        for (Header header : headers) {
+            if (header.getName().equalsIgnoreCase("Content-Type")) {
+                try {
+                    Charset charset = ContentType.parse(header.getValue()).getCharset();
+
+                    if (charset != null) {
+                        return charset;
+                    }
+                }
+                catch (ParseException | UnsupportedCharsetException e) {
+                    // Fall back to the default below
+                }
+            }
+        }
+
+        return StandardCharsets.ISO_8859_1;
+    }
+
+    /**
+     * Submit a request on a background thread, using a new cookie store
+     * @param request Request to submit
+     * @return Future which completes with the response, or completes exceptionally if the request couldn't be sent
+     */
+    public static CompletableFuture<RestResponse> executeAsync(RestRequest request) {
+        return executeAsync(request, new BasicCookieStore());
+    }
+
+    /**
+     * Submit a request on a background thread
+     * @param request Request to submit
+     * @param cookies Cookies to send with the request.  The store may be shared between concurrent requests.
+     * @return Future which completes with the response, or completes exceptionally if the request couldn't be sent
+     */
+    public static CompletableFuture<RestResponse> executeAsync(RestRequest request, CookieStore cookies) {
+        return CompletableFuture.supplyAsync(() -> execute(request, cookies), requestExecutor);
+    }
+
+    /**
+     * Submit a batch of requests concurrently
+     * @param requests Requests to submit
+     * @return Future which completes with the responses, in the same order as the requests, once they've all finished
+     */
+    public static CompletableFuture<List<RestResponse>> executeAll(List<RestRequest> requests) {
+
+        List<CompletableFuture<RestResponse>> futures = new ArrayList<>();
+
+        for (RestRequest request : requests) {
+            futures.add(executeAsync(request));
+        }
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            List<RestResponse> responses = new ArrayList<>();
+            futures.forEach(future -> responses.add(future.join()));
+            return responses;
+        });
+    }
+
+    private static HttpRequestBase createHttpRequest(RestRequest request) {
+
+        HttpRequestBase httpRequest;
+
+        switch (request.getMethod()) {
+
+            case POST:
+                httpRequest = new HttpPost(request.getUrl());
+                break;
+
+            case PUT:
+                httpRequest = new HttpPut(request.getUrl());
+                break;
+
+            case PATCH:
+                httpRequest = new HttpPatch(request.getUrl());
+                break;
+
+            case DELETE:
+                httpRequest = new HttpDelete(request.getUrl());
+                break;
+
+            case HEAD:
+                httpRequest = new HttpHead(request.getUrl());
+                break;
+
+            case OPTIONS:
+                httpRequest = new HttpOptions(request.getUrl());
+                break;
+
+            case GET:
+            default:
+                httpRequest = new HttpGet(request.getUrl());
+                break;
+        }
+
+        request.getHeaders().forEach(httpRequest::addHeader);
+
+        if (!request.isFollowRedirects()) {
+            httpRequest.setConfig(NO_REDIRECTS_REQUEST_CONFIG);
+        }
+
+        if (request.getBody() != null && httpRequest instanceof HttpEntityEnclosingRequestBase) {
+            ((HttpEntityEnclosingRequestBase) httpRequest).setEntity(new StringEntity(request.getBody(), "ISO-8859-1"));
+        }
+
+        return httpRequest;
+    }
 
     /**
      * Create a new helper instance for the specified endpoint
@@ -96,6 +487,18 @@ public class RestAPIHelper {
         submitRequest(requestType.PUT);
     }
 
+    public void submitPatchRequest() {
+        submitRequest(requestType.PATCH);
+    }
+
+    public void submitHeadRequest() {
+        submitRequest(requestType.HEAD);
+    }
+
+    public void submitOptionsRequest() {
+        submitRequest(requestType.OPTIONS);
+    }
+
     /**
      * Submit the request as the specified type
      * @param type Request type
@@ -103,44 +506,17 @@ public class RestAPIHelper {
     private void submitRequest(requestType type) {
         response = null;
 
-        try {
-
-            if (requestURL == null) {
-                throw new IllegalStateException("Request URL has not been specified");
-            }
+        if (requestURL == null) {
+            throw new IllegalStateException("Request URL has not been specified");
+        }
 
-            CloseableHttpClient httpclient = HttpClients.custom().setDefaultCookieStore(requestCookies).build();
-
-            switch(type){
-
-                case GET:
-                    HttpGet getRequest = new HttpGet(requestURL);
-                    requestHeaders.forEach(getRequest::addHeader);
-                    response = httpclient.execute(getRequest);
-                    break;
-
-                case POST:
-                    HttpPost postRequest = new HttpPost(requestURL);
-                    requestHeaders.forEach(postRequest::addHeader);
-                    if (requestBody != null) { postRequest.setEntity(new StringEntity(requestBody)); }
-                    response = httpclient.execute(postRequest);
-                    break;
-
-                case PUT:
-                    HttpPut putRequest = new HttpPut(requestURL);
-                    requestHeaders.forEach(putRequest::addHeader);
-                    if (requestBody != null) { putRequest.setEntity(new StringEntity(requestBody)); }
-                    response = httpclient.execute(putRequest);
-                    break;
-
-                case DELETE:
-                    HttpDelete deleterRequest = new HttpDelete(requestURL);
-                    requestHeaders.forEach(deleterRequest::addHeader);
-                    response = httpclient.execute(deleterRequest);
-                    break;
-            }
+        RestRequest.Builder request = RestRequest.builder(type, requestURL).body(requestBody);
+        requestHeaders.forEach(header -> request.header(header.getName(), header.getValue()));
 
-        } catch (IOException e) {
+        try {
+            response = execute(request.build(), requestCookies);
+        }
+        catch (UncheckedIOException e) {
             e.printStackTrace();
         }
     }
@@ -150,14 +526,7 @@ public class RestAPIHelper {
      * @return HTTP response code as a integer
      */
     public int getResponseCode() {
-
-        int code = 0;
-
-        if (response != null) {
-            code = response.getStatusLine().getStatusCode();
-        }
-
-        return code;
+        return (response != null) ? response.getResponseCode() : 0;
     }
 
     /**
@@ -165,24 +534,26 @@ public class RestAPIHelper {
      * @return Message body as a string
      */
     public String getResponseBody() {
-        String body = null;
-
-        if (response != null) {
-            try {
-                body = EntityUtils.toString(response.getEntity());
-            }
-            catch (IOException e) { e.printStackTrace(); }
-        }
+        return (response != null) ? response.getBody() : null;
+    }
 
-        return body;
+    /**
+     * Returns the full response to our request
+     * @return Response, or null if the request couldn't be sent
+     */
+    public RestResponse getResponse() {
+        return response;
     }
 
     // TODO need to get cookies from the response as well
 
-    private enum requestType {
+    public enum requestType {
         GET(),
         POST(),
         PUT(),
-        DELETE()
+        PATCH(),
+        DELETE(),
+        HEAD(),
+        OPTIONS()
     }
 }
\ No newline at end of file
@@ -0,0 +1,175 @@
+package framework;
+
+import org.apache.http.Header;
+import org.apache.http.message.BasicHeader;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable description of a single API request.  As nothing about a request can change once it's been built, the same
+ * instance can be submitted any number of times, from any number of threads, using RestAPIHelper.execute() or
+ * RestAPIHelper.executeAsync().
+ *
+ * RestRequest login = RestRequest.post(baseURL + "authenticate")
+ *         .header("Content-Type", "application/x-www-form-urlencoded")
+ *         .body("username=tomsmith&password=SuperSecretPassword!")
+ *         .build();
+ */
+public class RestRequest {
+
+    private final RestAPIHelper.requestType method;
+    private final String url;
+    private final List<Header> headers;
+    private final String body;
+    private final long maxBodySize;
+    private final boolean followRedirects;
+
+    private RestRequest(Builder builder) {
+        method = builder.method;
+        url = builder.url;
+        headers = Collections.unmodifiableList(new ArrayList<>(builder.headers));
+        body = builder.body;
+        maxBodySize = builder.maxBodySize;
+        followRedirects = builder.followRedirects;
+    }
+
+    public static Builder get(String url) { return new Builder(RestAPIHelper.requestType.GET, url); }
+
+    public static Builder post(String url) { return new Builder(RestAPIHelper.requestType.POST, url); }
+
+    public static Builder put(String url) { return new Builder(RestAPIHelper.requestType.PUT, url); }
+
+    public static Builder patch(String url) { return new Builder(RestAPIHelper.requestType.PATCH, url); }
+
+    public static Builder delete(String url) { return new Builder(RestAPIHelper.requestType.DELETE, url); }
+
+    public static Builder head(String url) { return new Builder(RestAPIHelper.requestType.HEAD, url); }
+
+    public static Builder options(String url) { return new Builder(RestAPIHelper.requestType.OPTIONS, url); }
+
+    /**
+     * Start building a request with the specified method
+     * @param method Request type
+     * @param url URL of the endpoint we will submit the request to
+     */
+    public static Builder builder(RestAPIHelper.requestType method, String url) {
+        return new Builder(method, url);
+    }
+
+    /**
+     * Start building a new request based on this one, i.e. to send the same request with a different body
+     */
+    public Builder toBuilder() {
+        Builder builder = new Builder(method, url);
+        builder.headers.addAll(headers);
+        builder.body = body;
+        builder.maxBodySize = maxBodySize;
+        builder.followRedirects = followRedirects;
+        return builder;
+    }
+
+    public RestAPIHelper.requestType getMethod() {
+        return method;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public List<Header> getHeaders() {
+        return headers;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    /**
+     * @return Largest response body in bytes we'll buffer for this request
+     */
+    public long getMaxBodySize() {
+        return maxBodySize;
+    }
+
+    /**
+     * @return True if redirects should be followed, false to return the redirect response itself
+     */
+    public boolean isFollowRedirects() {
+        return followRedirects;
+    }
+
+    @Override
+    public String toString() {
+        return method + " " + url;
+    }
+
+    public static class Builder {
+
+        private final RestAPIHelper.requestType method;
+        private final String url;
+        private final List<Header> headers = new ArrayList<>();
+        private String body;
+        private long maxBodySize = Long.getLong("framework.httpMaxBodySize", 10 * 1024 * 1024);
+        private boolean followRedirects = true;
+
+        private Builder(RestAPIHelper.requestType method, String url) {
+
+            if (method == null) {
+                throw new IllegalStateException("Request type has not been specified");
+            }
+
+            if (url == null) {
+                throw new IllegalStateException("Request URL has not been specified");
+            }
+
+            this.method = method;
+            this.url = url;
+        }
+
+        /**
+         * Adds a header to the request
+         * @param name Name of the header
+         * @param value Value of the header
+         */
+        public Builder header(String name, String value) {
+            headers.add(new BasicHeader(name, value));
+            return this;
+        }
+
+        /**
+         * Set the body value of the request.  This is ignored for request types which can't have a body.
+         * @param body Request body as a string
+         */
+        public Builder body(String body) {
+            this.body = body;
+            return this;
+        }
+
+        /**
+         * Set the largest response body in bytes we'll buffer for this request.  Defaults to the
+         * framework.httpMaxBodySize system property, or 10MB if that isn't set.  Bigger responses should be read with
+         * RestAPIHelper.executeStreaming() instead.
+         * @param maxBodySize Max size of the response body in bytes
+         */
+        public Builder maxBodySize(long maxBodySize) {
+            this.maxBodySize = maxBodySize;
+            return this;
+        }
+
+        /**
+         * Set whether redirects are followed, which they are by default.  Turn it off to see where a request such as a
+         * form post is sending us, from the response code and Location header.
+         * @param followRedirects False to return the redirect response itself
+         */
+        public Builder followRedirects(boolean followRedirects) {
+            this.followRedirects = followRedirects;
+            return this;
+        }
+
+        public RestRequest build() {
+            return new RestRequest(this);
+        }
+    }
+}
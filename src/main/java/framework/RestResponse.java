@@ -0,0 +1,141 @@
+package framework;
+
+import org.apache.http.Header;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable result of submitting a RestRequest.  The body is held as a single buffered copy of the bytes we received,
+ * which can be read as many times as needed, as a string, a stream or JSON.
+ */
+public class RestResponse {
+
+    private final RestRequest request;
+    private final String url;
+    private final int responseCode;
+    private final List<Header> headers;
+    private final byte[] body;
+    private final Charset charset;
+
+    // Decoded lazily, as callers reading the body as a stream or JSON never need the string
+    private volatile String bodyString;
+
+    RestResponse(RestRequest request, String url, int responseCode, List<Header> headers, byte[] body,
+                 Charset charset) {
+        this.request = request;
+        this.url = url;
+        this.responseCode = responseCode;
+        this.headers = Collections.unmodifiableList(headers);
+        this.body = body;
+        this.charset = charset;
+    }
+
+    /**
+     * @return The request this is the response to
+     */
+    public RestRequest getRequest() {
+        return request;
+    }
+
+    /**
+     * @return URL the response came from, which is the last redirect followed or the request URL if there weren't any
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return HTTP response code as a integer
+     */
+    public int getResponseCode() {
+        return responseCode;
+    }
+
+    public List<Header> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Get the value of the first header with the specified name
+     * @param name Name of the header, which isn't case sensitive
+     * @return Header value, or null if the header isn't present
+     */
+    public String getHeader(String name) {
+
+        for (Header header : headers) {
+            if (header.getName().equalsIgnoreCase(name)) {
+                return header.getValue();
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return Message body as a string, or null if the response had no body
+     */
+    public String getBody() {
+
+        if (body == null) {
+            return null;
+        }
+
+        String decoded = bodyString;
+
+        if (decoded == null) {
+            decoded = new String(body, charset);
+            bodyString = decoded;
+        }
+
+        return decoded;
+    }
+
+    /**
+     * @return Length of the message body in bytes
+     */
+    public int getBodyLength() {
+        return (body == null) ? 0 : body.length;
+    }
+
+    /**
+     * @return A new stream over the message body, which can be called as many times as needed
+     */
+    public InputStream getBodyAsStream() {
+        return new ByteArrayInputStream(body == null ? new byte[0] : body);
+    }
+
+    /**
+     * @return A new reader over the message body, using the charset given by the server
+     */
+    public Reader getBodyAsReader() {
+        return new InputStreamReader(getBodyAsStream(), charset);
+    }
+
+    /**
+     * Parse the message body as a JSON object, straight from the buffered bytes without creating a string first
+     */
+    public JSONObject getBodyAsJSONObject() {
+        return new JSONObject(new JSONTokener(getBodyAsReader()));
+    }
+
+    /**
+     * Parse the message body as a JSON array, straight from the buffered bytes without creating a string first
+     */
+    public JSONArray getBodyAsJSONArray() {
+        return new JSONArray(new JSONTokener(getBodyAsReader()));
+    }
+
+    @Override
+    public String toString() {
+        return request + " -> " + responseCode;
+    }
+}
@@ -1,16 +1,41 @@
 package framework;
 
+import framework.enums.FailureType;
+import org.openqa.selenium.ElementClickInterceptedException;
+import org.openqa.selenium.ElementNotInteractableException;
+import org.openqa.selenium.NoSuchSessionException;
+import org.openqa.selenium.SessionNotCreatedException;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.remote.UnreachableBrowserException;
 import org.testng.IRetryAnalyzer;
 import org.testng.ITestResult;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Retry analyzer for TestNG tests which will re-run a failing test before reporting a failure
  * This can be useful for dealing with flakey tests, but we should do as much as possible to make
  * the tests themselves reliable rather than hoping they will pass on the next attempt.
+ *
+ * Only failures which look transient are retried, i.e. waits timing out, stale elements or the browser session
+ * crashing.  Failed assertions and anything else unexpected are reported straight away, as they're most likely real
+ * problems with the site and retrying them just makes the run take longer.  Each retry waits a little longer before
+ * starting, from framework.retryBackoff milliseconds (defaults to 1000) doubling each time.
+ *
+ * The whole run can only retry framework.retryBudget tests (defaults to 20), so a bad deploy which breaks everything
+ * doesn't make the run take three times as long.  Retries are recorded in the TestHistory.
   */
 
 public class RetryOnFail implements IRetryAnalyzer  {
 
+    private static final int RETRY_BUDGET = Integer.getInteger("framework.retryBudget", 20);
+    private static final long BACKOFF_MILLIS = Long.getLong("framework.retryBackoff", 1000);
+
+    private static final AtomicInteger retriesUsed = new AtomicInteger();
+
     private int count = 0;
     private int maxCount = 2; // Number of re-try attempts
 
@@ -22,16 +47,72 @@ public class RetryOnFail implements IRetryAnalyzer  {
     public boolean retry(ITestResult result) {
         count++;
 
-        if (isRetryAvailable()){
-            System.out.println("Retrying test: " + result.getMethod().getMethodName() + " - attempt " + count + "/" + maxCount);
+        String testName = result.getMethod().getMethodName();
+        FailureType failureType = classify(result.getThrowable());
+
+        if (!isRetryAvailable() || !failureType.retryable) {
+            System.out.println("Test failed: " + testName + " (" + failureType + ")");
             System.out.println(result.getThrowable().toString());
+            result.getThrowable().printStackTrace();
+            return false;
         }
-        else {
-            System.out.println("Test failed: " + result.getMethod().getMethodName());
+
+        if (retriesUsed.incrementAndGet() > RETRY_BUDGET) {
+            System.out.println("Test failed: " + testName + " - retry budget of " + RETRY_BUDGET + " used up");
             System.out.println(result.getThrowable().toString());
             result.getThrowable().printStackTrace();
+            return false;
+        }
+
+        System.out.println("Retrying test: " + testName + " - attempt " + count + "/" + maxCount + " (" + failureType + ")");
+        System.out.println(result.getThrowable().toString());
+
+        TestHistory.get().recordRetry(TestHistory.nameOf(result), TestHistory.invocationOf(result));
+        backOff();
+
+        return true;
+    }
+
+    private void backOff() {
+
+        try {
+            Thread.sleep(BACKOFF_MILLIS << (count - 1));
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Work out what kind of failure a throwable represents, looking through its causes as well
+     */
+    public static FailureType classify(Throwable throwable) {
+
+        FailureType failureType = FailureType.PRODUCT;
+
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+
+            // Assertions are always real failures, even if something transient went wrong on the way
+            if (cause instanceof AssertionError) {
+                return FailureType.PRODUCT;
+            }
+
+            if (cause instanceof NoSuchSessionException || cause instanceof SessionNotCreatedException
+                    || cause instanceof UnreachableBrowserException || cause instanceof UncheckedIOException
+                    || cause instanceof IOException) {
+                failureType = FailureType.INFRASTRUCTURE;
+            }
+            else if (failureType == FailureType.PRODUCT && (cause instanceof TimeoutException
+                    || cause instanceof StaleElementReferenceException || cause instanceof ElementClickInterceptedException
+                    || cause instanceof ElementNotInteractableException)) {
+                failureType = FailureType.TRANSIENT;
+            }
+
+            if (cause.getCause() == cause) {
+                break;
+            }
         }
 
-        return isRetryAvailable();
+        return failureType;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,171 @@
+package framework;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Writes screenshots to disk on a background thread so tests don't have to wait for the file to be saved.  Filenames
+ * are made unique with a timestamp for the test run and a counter, so tests running in parallel can never pick the same
+ * name and we never have to check which files already exist.
+ *
+ * The queue of screenshots waiting to be written is bounded by framework.screenshotQueueSize (defaults to 64).  If it
+ * fills up the test thread writes the screenshot itself.  If framework.screenshotDedupe is set, a screenshot identical
+ * to one already saved during this run isn't written again, and the path of the existing file is returned instead.
+ */
+public class ScreenshotService {
+
+    private static final String RUN_ID = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+    private static final AtomicLong counter = new AtomicLong();
+
+    private static final ThreadPoolExecutor writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(Integer.getInteger("framework.screenshotQueueSize", 64)),
+            runnable -> {
+                Thread thread = new Thread(runnable, "screenshot-writer");
+                thread.setDaemon(true);
+                return thread;
+            },
+            new ThreadPoolExecutor.CallerRunsPolicy());
+
+    // Hash of every screenshot written during this run, so duplicates can be skipped
+    private static final Map<String, Path> writtenHashes = new ConcurrentHashMap<>();
+
+    // Every write registers until it's finished, including any run on a test thread when the queue was full
+    private static final Phaser pendingWrites = new Phaser(1);
+
+    static {
+        // Make sure all the screenshots are on disk before the JVM exits
+        Runtime.getRuntime().addShutdownHook(new Thread(ScreenshotService::awaitPendingWrites));
+    }
+
+    private ScreenshotService() {
+
+    }
+
+    /**
+     * Queue a screenshot to be written to the screenshot folder
+     * @param png Screenshot image, as returned by WebDriver
+     * @param imageName Filename for the screenshot without file extension
+     * @return Future which completes with the path of the saved screenshot
+     */
+    public static CompletableFuture<Path> save(byte[] png, String imageName) {
+        Path file = fileFor(imageName);
+        return submit(() -> write(png, file));
+    }
+
+    /**
+     * Queue an image to be encoded as a png and written to the screenshot folder, i.e. a diff from a visual check.  The
+     * encoding is done on the writer thread too.
+     * @param image Image to save
+     * @param imageName Filename for the image without file extension
+     * @return Future which completes with the path of the saved image
+     */
+    public static CompletableFuture<Path> save(BufferedImage image, String imageName) {
+
+        Path file = fileFor(imageName);
+
+        return submit(() -> {
+            try {
+                ByteArrayOutputStream png = new ByteArrayOutputStream();
+                ImageIO.write(image, "png", png);
+                return write(png.toByteArray(), file);
+            }
+            catch (IOException e) {
+                throw new IllegalStateException("Unable to encode image " + file, e);
+            }
+        });
+    }
+
+    private static CompletableFuture<Path> submit(Supplier<Path> task) {
+
+        pendingWrites.register();
+
+        return CompletableFuture.supplyAsync(task, writer)
+                .whenComplete((file, error) -> pendingWrites.arriveAndDeregister());
+    }
+
+    private static Path fileFor(String imageName) {
+        return ConfigManager.get().getScreenshotPath()
+                .resolve(imageName + "-" + RUN_ID + "-" + counter.getAndIncrement() + ".png");
+    }
+
+    private static Path write(byte[] png, Path file) {
+
+        String hash = Boolean.parseBoolean(System.getProperty("framework.screenshotDedupe")) ? hash(png) : null;
+
+        if (hash != null) {
+            Path existing = writtenHashes.get(hash);
+
+            if (existing != null) {
+                return existing;
+            }
+        }
+
+        try {
+            Files.createDirectories(file.getParent());
+            Files.write(file, png);
+
+            // Only handed out to duplicates once it's on disk.  A duplicate being written at the same time on a test
+            // thread just gets its own copy.
+            if (hash != null) {
+                writtenHashes.putIfAbsent(hash, file);
+            }
+
+            return file;
+        }
+        catch (IOException e) {
+            System.out.println("Error saving screenshot");
+            e.printStackTrace();
+            throw new IllegalStateException("Unable to save screenshot " + file, e);
+        }
+    }
+
+    private static String hash(byte[] png) {
+
+        try {
+            StringBuilder hex = new StringBuilder();
+
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(png)) {
+                hex.append(String.format("%02x", b));
+            }
+
+            return hex.toString();
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Wait for any queued screenshots to be written
+     */
+    static void awaitPendingWrites() {
+
+        try {
+            pendingWrites.awaitAdvanceInterruptibly(pendingWrites.arrive(), 60, TimeUnit.SECONDS);
+        }
+        catch (TimeoutException e) {
+            System.out.println("Timed out waiting for screenshots to be saved");
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
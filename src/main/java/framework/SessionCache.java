@@ -0,0 +1,282 @@
+package framework;
+
+import framework.enums.TestAccounts;
+import models.User;
+import org.apache.http.client.CookieStore;
+import org.apache.http.impl.client.BasicCookieStore;
+import org.apache.http.impl.cookie.BasicClientCookie;
+import org.openqa.selenium.Cookie;
+
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Logs each user in once and shares the resulting session between tests, so tests which just need to be logged in
+ * don't have to go through the login form every time.
+ *
+ * The session is obtained by posting the user's credentials to the authenticate endpoint.  If that doesn't work the
+ * user is logged in through the UI once instead, using the driver the session is being restored into and the login
+ * steps supplied by the page object.  Either way the cookies, localStorage and sessionStorage are snapshotted and
+ * injected into any new driver which needs them.
+ *
+ * Sessions are kept for framework.sessionTtl seconds (defaults to 900).  A session is thrown away and the user logged in
+ * again if restoring it lands on the login page, or if an API request made with it gets a 401.
+ */
+public class SessionCache {
+
+    private static final String LOGIN_PATH = "login";
+    private static final String AUTHENTICATE_PATH = "authenticate";
+
+    private static final long TTL_NANOS = TimeUnit.SECONDS.toNanos(Long.getLong("framework.sessionTtl", 900));
+
+    private static final Map<String, SessionState> sessions = new ConcurrentHashMap<>();
+    private static final Map<String, Object> locks = new ConcurrentHashMap<>();
+
+    private SessionCache() {
+
+    }
+
+    public static void restore(DriverWrapper driver, TestAccounts account, String landingURL,
+                               BiConsumer<DriverWrapper, User> uiLogin) {
+        restore(driver, account.getUser(), landingURL, uiLogin);
+    }
+
+    /**
+     * Put the driver into a logged in state for the user and load the landing page
+     * @param driver Driver to restore the session into
+     * @param user User to log in as
+     * @param landingURL Page to load once the session has been restored
+     * @param uiLogin Steps to log in through the UI if the API login doesn't work, or null to only use the API
+     */
+    public static void restore(DriverWrapper driver, User user, String landingURL, BiConsumer<DriverWrapper, User> uiLogin) {
+
+        for (int attempt = 0; attempt < 2; attempt++) {
+
+            inject(driver, getSession(user, driver, uiLogin));
+            driver.get(landingURL);
+
+            if (!isLoginPage(driver)) {
+                return;
+            }
+
+            // Session has expired on the server, so log in again
+            System.out.println("Cached session for " + user.getUsername() + " was rejected, logging in again");
+            invalidate(user);
+        }
+
+        throw new IllegalStateException("Unable to restore a logged in session for " + user.getUsername());
+    }
+
+    /**
+     * Get a cookie store holding the user's session, for API requests which need to be logged in.  Pass the response
+     * to checkResponse() so a session which has expired on the server is thrown away.
+     */
+    public static CookieStore getCookieStore(User user) {
+
+        CookieStore store = new BasicCookieStore();
+
+        for (Cookie cookie : getSession(user, null, null).cookies) {
+            BasicClientCookie apiCookie = new BasicClientCookie(cookie.getName(), cookie.getValue());
+            apiCookie.setDomain(cookie.getDomain());
+            apiCookie.setPath(cookie.getPath());
+            apiCookie.setExpiryDate(cookie.getExpiry());
+            apiCookie.setSecure(cookie.isSecure());
+            store.addCookie(apiCookie);
+        }
+
+        return store;
+    }
+
+    /**
+     * Throw away the user's session if the response shows it's no longer valid
+     * @return True if the session was still valid
+     */
+    public static boolean checkResponse(User user, RestResponse response) {
+
+        // Depending on whether the request followed redirects we'll either see the redirect to the login page or the
+        // login page itself
+        if (response.getResponseCode() == 401 || isLoginUrl(response.getHeader("Location")) || isLoginUrl(response.getUrl())) {
+            invalidate(user);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Forget the user's session, so the next test to need it logs in again
+     */
+    public static void invalidate(User user) {
+        sessions.remove(user.getUsername());
+    }
+
+    /**
+     * Get the cached session for a user, logging in if there isn't one or it's expired.  Only one thread logs each user
+     * in, anyone else needing the same user waits for it.
+     * @param driver Driver to log in through the UI with if the API login fails
+     * @param uiLogin Steps to log in through the UI, or null to only try the API
+     */
+    private static SessionState getSession(User user, DriverWrapper driver, BiConsumer<DriverWrapper, User> uiLogin) {
+
+        String key = user.getUsername();
+        SessionState session = sessions.get(key);
+
+        if (session != null && !session.isExpired()) {
+            return session;
+        }
+
+        synchronized (locks.computeIfAbsent(key, k -> new Object())) {
+
+            session = sessions.get(key);
+
+            if (session == null || session.isExpired()) {
+                session = loginThroughApi(user);
+
+                if (session == null) {
+                    if (driver == null || uiLogin == null) {
+                        throw new IllegalStateException("Unable to log in " + user.getUsername() + " through the API");
+                    }
+
+                    session = loginThroughUi(driver, user, uiLogin);
+                }
+
+                sessions.put(key, session);
+            }
+
+            return session;
+        }
+    }
+
+    /**
+     * Log in by posting the credentials to the authenticate endpoint
+     * @return The session, or null if the login didn't work
+     */
+    private static SessionState loginThroughApi(User user) {
+
+        String baseURL = ConfigManager.get().getBaseURL();
+        BasicCookieStore cookies = new BasicCookieStore();
+
+        try {
+            RestRequest login = RestRequest.post(baseURL + AUTHENTICATE_PATH)
+                    .header("Content-Type", "application/x-www-form-urlencoded")
+                    .body("username=" + URLEncoder.encode(user.getUsername(), "UTF-8")
+                            + "&password=" + URLEncoder.encode(user.getPassword(), "UTF-8"))
+                    .followRedirects(false)
+                    .build();
+
+            // The site redirects to the secure area on success and back to the login page on failure.  Following the
+            // redirect would hide which one it was, as both pages come back as a 200.
+            RestResponse response = RestAPIHelper.execute(login, cookies);
+
+            if (response.getResponseCode() >= 400 || isLoginUrl(response.getHeader("Location"))
+                    || cookies.getCookies().isEmpty()) {
+                System.out.println("API login failed for " + user.getUsername() + ", response code " + response.getResponseCode());
+                return null;
+            }
+        }
+        catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 not supported", e);
+        }
+        catch (IllegalStateException | UncheckedIOException e) {
+            System.out.println("API login failed for " + user.getUsername() + ": " + e.getMessage());
+            return null;
+        }
+
+        List<Cookie> browserCookies = new ArrayList<>();
+
+        for (org.apache.http.cookie.Cookie cookie : cookies.getCookies()) {
+            browserCookies.add(new Cookie(cookie.getName(), cookie.getValue(), cookie.getDomain(), cookie.getPath(),
+                    cookie.getExpiryDate(), cookie.isSecure()));
+        }
+
+        return new SessionState(baseURL, browserCookies, Collections.emptyMap(), Collections.emptyMap());
+    }
+
+    /**
+     * Log in through the login form and snapshot the browser's session
+     */
+    private static SessionState loginThroughUi(DriverWrapper driver, User user, BiConsumer<DriverWrapper, User> uiLogin) {
+
+        uiLogin.accept(driver, user);
+
+        if (isLoginPage(driver)) {
+            throw new IllegalStateException("Unable to log in " + user.getUsername() + " through the UI");
+        }
+
+        return new SessionState(ConfigManager.get().getBaseURL(), new ArrayList<>(driver.getCookies()),
+                driver.getAllLocalStorage(), driver.getAllSessionStorage());
+    }
+
+    /**
+     * Copy a session into a driver.  Cookies and storage can only be set for the site the browser is on, so we load
+     * the base URL first.
+     */
+    private static void inject(DriverWrapper driver, SessionState session) {
+
+        driver.get(session.baseURL);
+
+        for (Cookie cookie : session.cookies) {
+            // Host only cookies have to be added without a domain, the browser uses the current one
+            String domain = cookie.getDomain() != null && cookie.getDomain().startsWith(".") ? cookie.getDomain() : null;
+            driver.addCookie(new Cookie(cookie.getName(), cookie.getValue(), domain, cookie.getPath(), cookie.getExpiry(),
+                    cookie.isSecure()));
+        }
+
+        driver.setLocalStorage(session.localStorage);
+        driver.setSessionStorage(session.sessionStorage);
+    }
+
+    private static boolean isLoginPage(DriverWrapper driver) {
+        return driver.urlContains("/" + LOGIN_PATH);
+    }
+
+    private static boolean isLoginUrl(String url) {
+        return url != null && url.contains("/" + LOGIN_PATH);
+    }
+
+    /**
+     * Snapshot of a logged in session
+     */
+    private static class SessionState {
+
+        private final String baseURL;
+        private final List<Cookie> cookies;
+        private final Map<String, String> localStorage;
+        private final Map<String, String> sessionStorage;
+        private final long createdAt = System.nanoTime();
+
+        private SessionState(String baseURL, List<Cookie> cookies, Map<String, String> localStorage,
+                             Map<String, String> sessionStorage) {
+            this.baseURL = baseURL;
+            this.cookies = Collections.unmodifiableList(cookies);
+            this.localStorage = Collections.unmodifiableMap(localStorage);
+            this.sessionStorage = Collections.unmodifiableMap(sessionStorage);
+        }
+
+        private boolean isExpired() {
+
+            if (System.nanoTime() - createdAt > TTL_NANOS) {
+                return true;
+            }
+
+            Date now = new Date();
+
+            for (Cookie cookie : cookies) {
+                if (cookie.getExpiry() != null && cookie.getExpiry().before(now)) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
+}
@@ -1,25 +1,197 @@
 package framework;
 
-import org.jboss.aerogear.security.otp.Totp;
+import org.jboss.aerogear.security.otp.api.Base32;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Helper for tests involving 2F Auth.  Pass the shared secret when initilizing the class and it will allow
  * a TOTP (Temporary One Time Password) to be generated at any time.
+ *
+ * Codes change every 30 seconds, so a code generated just before the window ends is often rejected by the time it's
+ * submitted.  getOTP() waits for the next window if fewer than framework.totpMinValidity seconds (defaults to 5) of the
+ * current one are left.  If the machine's clock is out from the server's, set framework.totpClockSkew to the number of
+ * seconds the server is ahead (or negative if it's behind).
+ *
+ * Most sites only accept each code once, so a code is never handed out twice for the same secret.  If two tests using
+ * the same account ask for a code in the same window the second one waits for the next window.
  */
 public class TOTPHelper {
 
-    final Totp totpGen;
+    private static final long WINDOW_MILLIS = 30_000;
+    private static final int DIGITS = 6;
+    private static final int DIGITS_POWER = 1_000_000;
+
+    private static final long MIN_VALIDITY_MILLIS = Long.getLong("framework.totpMinValidity", 5) * 1000;
+    private static final long CLOCK_SKEW_MILLIS = Long.getLong("framework.totpClockSkew", 0) * 1000;
+
+    // Decoding the secret is the expensive part, so each one is only decoded once
+    private static final Map<String, SecretState> secrets = new ConcurrentHashMap<>();
+
+    private static final ThreadLocal<Mac> macs = ThreadLocal.withInitial(() -> {
+        try {
+            return Mac.getInstance("HmacSHA1");
+        }
+        catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA1 not supported", e);
+        }
+    });
+
+    final SecretState state;
+    private final Clock clock;
 
     public TOTPHelper(String secret){
-        totpGen = new Totp(secret);
+        this(secret, Clock.systemUTC());
     }
 
+    /**
+     * @param clock Clock to read the time from, so tests can generate codes for a known time
+     */
+    TOTPHelper(String secret, Clock clock) {
+        state = secrets.computeIfAbsent(secret, SecretState::new);
+        this.clock = clock;
+    }
+
+    /**
+     * Get a code which hasn't been used by another test and is valid for at least framework.totpMinValidity seconds,
+     * waiting for the next window if needed
+     */
     public String getOTP(){
-        return totpGen.now();
+        return getOTP(Duration.ofMillis(MIN_VALIDITY_MILLIS));
+    }
+
+    /**
+     * Get a code which hasn't been used by another test and is valid for at least the specified time, waiting for the
+     * next window if needed
+     * @param minValidity Shortest time the code must still be valid for
+     */
+    public String getOTP(Duration minValidity) {
+
+        if (minValidity.toMillis() >= WINDOW_MILLIS) {
+            throw new IllegalStateException("A TOTP code is only valid for " + WINDOW_MILLIS / 1000 + " seconds");
+        }
+
+        // Anyone else wanting a code for this secret waits here, so they get a later window than us
+        synchronized (state) {
+
+            long now = serverTime(clock);
+            long window = now / WINDOW_MILLIS;
+
+            if (window <= state.lastIssuedWindow || WINDOW_MILLIS - now % WINDOW_MILLIS < minValidity.toMillis()) {
+                window = Math.max(window, state.lastIssuedWindow) + 1;
+                sleepUntil(clock, window * WINDOW_MILLIS);
+            }
+
+            state.lastIssuedWindow = window;
+            return generate(state.key, window);
+        }
+    }
+
+    /**
+     * Get the code for the current window without waiting, even if it's about to expire or has already been used
+     */
+    public String getCurrentOTP() {
+        return generate(state.key, serverTime(clock) / WINDOW_MILLIS);
+    }
+
+    /**
+     * Get the code for the next window, i.e. to check a site which accepts codes from slightly in the future
+     */
+    public String getNextOTP() {
+        return generate(state.key, serverTime(clock) / WINDOW_MILLIS + 1);
+    }
+
+    /**
+     * @return How much longer the current code is valid for
+     */
+    public static Duration getRemainingValidity() {
+        return Duration.ofMillis(WINDOW_MILLIS - serverTime(Clock.systemUTC()) % WINDOW_MILLIS);
     }
 
+    /**
+     * Get a code which hasn't been used by another test and is valid for at least framework.totpMinValidity seconds
+     */
     public static String generateOTP(String secret) {
-        Totp totp = new Totp(secret);
-        return totp.now();
+        return new TOTPHelper(secret).getOTP();
+    }
+
+    /**
+     * Current time on the server, allowing for the configured clock skew
+     */
+    private static long serverTime(Clock clock) {
+        return clock.millis() + CLOCK_SKEW_MILLIS;
+    }
+
+    private static void sleepUntil(Clock clock, long serverTime) {
+
+        long wait = serverTime - serverTime(clock);
+
+        try {
+            if (wait > 0) {
+                Thread.sleep(wait);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the next TOTP window", e);
+        }
+    }
+
+    /**
+     * Generate the code for a window, as per RFC 6238
+     */
+    private static String generate(SecretKeySpec key, long window) {
+
+        Mac mac = macs.get();
+
+        try {
+            mac.init(key);
+        }
+        catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Invalid TOTP secret", e);
+        }
+
+        byte[] hash = mac.doFinal(ByteBuffer.allocate(8).putLong(window).array());
+
+        // Take 4 bytes from the offset given by the last nibble of the hash
+        int offset = hash[hash.length - 1] & 0xf;
+        int binary = ((hash[offset] & 0x7f) << 24) | ((hash[offset + 1] & 0xff) << 16)
+                | ((hash[offset + 2] & 0xff) << 8) | (hash[offset + 3] & 0xff);
+
+        String code = Integer.toString(binary % DIGITS_POWER);
+
+        // Pad with leading zeros
+        StringBuilder padded = new StringBuilder(DIGITS);
+
+        for (int x = code.length(); x < DIGITS; x++) {
+            padded.append('0');
+        }
+
+        return padded.append(code).toString();
+    }
+
+    /**
+     * Decoded key for a secret and the last window a code was handed out for
+     */
+    static class SecretState {
+
+        private final SecretKeySpec key;
+        private long lastIssuedWindow = Long.MIN_VALUE;
+
+        private SecretState(String secret) {
+            try {
+                key = new SecretKeySpec(Base32.decode(secret), "HmacSHA1");
+            }
+            catch (Base32.DecodingException e) {
+                throw new IllegalStateException("TOTP secret is not valid Base32", e);
+            }
+        }
     }
-}
\ No newline at end of file
+}
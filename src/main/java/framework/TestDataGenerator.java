@@ -0,0 +1,198 @@
+package framework;
+
+import models.User;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Generates random test data quickly and reproducibly.  Each thread has its own generator, so tests running in
+ * parallel never contend for a shared random number generator.
+ *
+ * All the data comes from a single seed, which is logged at the start of the run.  Pass it back in with the
+ * framework.seed system property to get the same data again.  DriverContextListener reseeds each test's generator from
+ * the run seed and the test's name as it starts, so a test gets the same data on a replay no matter which thread it
+ * runs on or which other tests run alongside it.
+ *
+ * TestDataGenerator data = TestDataGenerator.current();
+ * List<User> users = data.users(100);
+ */
+public class TestDataGenerator {
+
+    private static final char[] ALPHANUMERIC = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789".toCharArray();
+
+    private static final long[] POWERS_OF_TEN = new long[19];
+
+    private static final long RUN_SEED;
+    private static final SplittableRandom root;
+
+    private static final ThreadLocal<TestDataGenerator> generators = ThreadLocal.withInitial(TestDataGenerator::split);
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+
+        for (int x = 1; x < POWERS_OF_TEN.length; x++) {
+            POWERS_OF_TEN[x] = POWERS_OF_TEN[x - 1] * 10;
+        }
+
+        Long seed = Long.getLong("framework.seed");
+        RUN_SEED = seed != null ? seed : new SplittableRandom().nextLong();
+        root = new SplittableRandom(RUN_SEED);
+
+        System.out.println("Test data seed: " + RUN_SEED + " (replay with -Dframework.seed=" + RUN_SEED + ")");
+    }
+
+    private SplittableRandom random;
+    private long seed;
+
+    private TestDataGenerator(long seed) {
+        reseed(seed);
+    }
+
+    private static synchronized TestDataGenerator split() {
+        return new TestDataGenerator(root.nextLong());
+    }
+
+    /**
+     * Get the generator for the current thread
+     */
+    public static TestDataGenerator current() {
+        return generators.get();
+    }
+
+    /**
+     * Reseed the current thread's generator for a test, from the run seed and the test's name
+     * @param testName Unique name of the test, i.e. class and method name
+     * @return The test's seed
+     */
+    public static long reseedForTest(String testName) {
+
+        // Mix the name into the run seed so that similar names still give unrelated seeds
+        long testSeed = new SplittableRandom(RUN_SEED ^ testName.hashCode() * 0x9E3779B97F4A7C15L).nextLong();
+
+        current().reseed(testSeed);
+        return testSeed;
+    }
+
+    public static long getRunSeed() {
+        return RUN_SEED;
+    }
+
+    /**
+     * Start generating from a specific seed, i.e. to replay the data from a failed test
+     */
+    public void reseed(long seed) {
+        this.seed = seed;
+        this.random = new SplittableRandom(seed);
+    }
+
+    /**
+     * @return The seed this generator was last seeded with
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Generate a random string of letters and digits
+     */
+    public String alphanumeric(int length) {
+
+        char[] chars = new char[length];
+        int filled = 0;
+
+        while (filled < length) {
+            long bits = random.nextLong();
+
+            // Each long gives us ten 6 bit values, skipping any which fall outside the 62 characters
+            for (int x = 0; x < 10 && filled < length; x++, bits >>>= 6) {
+                int index = (int) (bits & 0x3F);
+
+                if (index < ALPHANUMERIC.length) {
+                    chars[filled++] = ALPHANUMERIC[index];
+                }
+            }
+        }
+
+        return new String(chars);
+    }
+
+    /**
+     * Generate a random number of the specified length with no leading zeros
+     * @param length Number of digits the number should contain, up to 18
+     */
+    public long number(int length) {
+
+        // We'll limit the length to 18 digits to avoid hitting Long.MAX_VALUE
+        if (length < 1 || length > 18) {
+            throw new IllegalStateException("Random number length must be between 1 and 18");
+        }
+
+        long magnitude = POWERS_OF_TEN[length - 1];
+
+        // First digit can't be a zero, the rest can be anything
+        return (random.nextInt(9) + 1) * magnitude + random.nextLong(magnitude);
+    }
+
+    /**
+     * Generate an 11 digit phone number
+     */
+    public String phoneNumber() {
+        return String.valueOf(number(11));
+    }
+
+    /**
+     * Generate a unique email address for the inbox in the config, using plus addressing
+     */
+    public String email() {
+
+        ConfigManager props = ConfigManager.get();
+        String username = props.getEmailUsername();
+        String domain = props.getEmailDomain();
+
+        return new StringBuilder(username.length() + domain.length() + 11)
+                .append(username).append('+').append(alphanumeric(10)).append(domain)
+                .toString();
+    }
+
+    /**
+     * Generate a user with random details
+     */
+    public User user() {
+        return new User(alphanumeric(8), alphanumeric(8), email(), alphanumeric(8), phoneNumber(), alphanumeric(8));
+    }
+
+    public List<User> users(int count) {
+
+        List<User> users = new ArrayList<>(count);
+
+        for (int x = 0; x < count; x++) {
+            users.add(user());
+        }
+
+        return users;
+    }
+
+    public List<String> emails(int count) {
+
+        List<String> emails = new ArrayList<>(count);
+
+        for (int x = 0; x < count; x++) {
+            emails.add(email());
+        }
+
+        return emails;
+    }
+
+    public List<String> phoneNumbers(int count) {
+
+        List<String> phoneNumbers = new ArrayList<>(count);
+
+        for (int x = 0; x < count; x++) {
+            phoneNumbers.add(phoneNumber());
+        }
+
+        return phoneNumbers;
+    }
+}
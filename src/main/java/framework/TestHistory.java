@@ -0,0 +1,401 @@
+package framework;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.testng.ITestResult;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pass, fail and retry history for each test, kept in a local file between runs so flaky tests can be spotted.  The
+ * file is set with framework.testHistoryFile and defaults to test-history.json in the working directory.
+ *
+ * The outcome of each of the last 20 runs of a test is kept: P for a pass, R for a pass which needed a retry and F for
+ * a failure.  A data driven test gets one outcome per run, which is F if any invocation failed and R if any needed a
+ * retry, so invocations with different data passing and failing in the same run don't look like flakiness.  A test is
+ * flaky if, once it's been run at least 5 times, framework.quarantineThreshold (defaults to 0.2) or more of its recent
+ * runs either needed a retry or were a blip, i.e. a failure between two passes or a pass between two failures.  A test
+ * which starts failing and keeps failing has found a real problem rather than being flaky, so it isn't quarantined.
+ *
+ * How long each test takes is kept too, as a moving average of the total time of all its invocations and retries in a
+ * run.  These can be exported with exportDurations() for TestSharder to balance tests between shards.
+ *
+ * Forks and shards can share the file, so saving is done under a lock on a .lock file alongside it.  The file is read
+ * again, only this run's results are added to what's there, and it's replaced in one move so nobody reads half of it.
+ */
+public class TestHistory {
+
+    public static final char PASSED = 'P';
+    public static final char PASSED_ON_RETRY = 'R';
+    public static final char FAILED = 'F';
+
+    private static final int RECENT_RUNS = 20;
+    private static final int MIN_RUNS = 5;
+
+    // Weight given to the latest run's duration, so the average follows tests getting slower or faster
+    private static final double DURATION_WEIGHT = 0.3;
+
+    private static final double QUARANTINE_THRESHOLD = getQuarantineThreshold();
+
+    private static TestHistory instance;
+
+    private final Path file;
+    private final Map<String, Record> records = new HashMap<>();
+
+    // Passes, failures and retries in this run, added to the totals when the history is saved
+    private final Map<String, Record> runCounts = new HashMap<>();
+
+    // Retries in this run for tests which haven't finished yet
+    private final Map<String, AtomicInteger> pendingRetries = new ConcurrentHashMap<>();
+
+    // Time spent on each test in this run, added to the averages when the history is saved
+    private final Map<String, LongAdder> runDurations = new ConcurrentHashMap<>();
+
+    // Worst outcome of each test's invocations in this run, added to the recent outcomes when the history is saved
+    private final Map<String, Character> runOutcomes = new HashMap<>();
+
+    private TestHistory(Path file) {
+        this.file = file;
+        load();
+    }
+
+    /**
+     * Get the history, loading it from the file the first time it's needed
+     */
+    public static synchronized TestHistory get() {
+
+        if (instance == null) {
+            String fileName = System.getProperty("framework.testHistoryFile");
+
+            // Unset maven properties come through as the literal ${...} placeholder, or empty
+            if (fileName == null || fileName.isEmpty() || fileName.startsWith("${")) {
+                fileName = "test-history.json";
+            }
+
+            instance = new TestHistory(Paths.get(fileName));
+        }
+
+        return instance;
+    }
+
+    private static double getQuarantineThreshold() {
+
+        String threshold = System.getProperty("framework.quarantineThreshold");
+
+        try {
+            return threshold == null ? 0.2 : Double.parseDouble(threshold);
+        }
+        catch (NumberFormatException e) {
+            // Unset maven properties come through as the literal ${...} placeholder
+            return 0.2;
+        }
+    }
+
+    private void load() {
+
+        records.clear();
+
+        if (!Files.exists(file)) {
+            return;
+        }
+
+        try {
+            JSONObject json = new JSONObject(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+
+            for (String testName : json.keySet()) {
+                JSONObject record = json.getJSONObject(testName);
+                records.put(testName, new Record(record.optInt("passes"), record.optInt("failures"),
+                        record.optInt("retries"), record.optString("recent"), record.optLong("durationMillis")));
+            }
+        }
+        catch (IOException | JSONException e) {
+            // Losing the history just means we start counting again, so don't stop the run
+            System.out.println("Unable to read test history from " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Add this run's results to the file.  Anything saved by another fork since the history was loaded is kept.
+     */
+    public synchronized void save() {
+
+        Path lockFile = file.resolveSibling(file.getFileName() + ".lock");
+
+        try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+
+            FileLock lock = channel.lock();
+
+            try {
+                load();
+
+                for (Map.Entry<String, Record> entry : runCounts.entrySet()) {
+                    getRecord(records, entry.getKey()).addCounts(entry.getValue());
+                }
+
+                for (Map.Entry<String, LongAdder> entry : runDurations.entrySet()) {
+                    getRecord(records, entry.getKey()).addDuration(entry.getValue().sum());
+                }
+
+                for (Map.Entry<String, Character> entry : runOutcomes.entrySet()) {
+                    getRecord(records, entry.getKey()).addOutcome(entry.getValue());
+                }
+
+                write();
+
+                runCounts.clear();
+                runDurations.clear();
+                runOutcomes.clear();
+            }
+            finally {
+                lock.release();
+            }
+        }
+        catch (IOException e) {
+            System.out.println("Unable to write test history to " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Write how long each test takes to a separate file for TestSharder, to be handed to every shard of a later run.
+     * The shards can't use the history itself, as each one adds to it when it finishes.
+     * @param exportFile File to write the durations to, as a JSON object of test name to milliseconds
+     */
+    public synchronized void exportDurations(Path exportFile) {
+
+        JSONObject json = new JSONObject();
+
+        for (Map.Entry<String, Record> entry : records.entrySet()) {
+            if (entry.getValue().durationMillis > 0) {
+                json.put(entry.getKey(), entry.getValue().durationMillis);
+            }
+        }
+
+        try {
+            writeAtomically(exportFile, json);
+        }
+        catch (IOException e) {
+            System.out.println("Unable to write test durations to " + exportFile + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Write the history to a temporary file and move it into place, so the file is never left half written
+     */
+    private void write() throws IOException {
+
+        JSONObject json = new JSONObject();
+
+        for (Map.Entry<String, Record> entry : records.entrySet()) {
+            Record record = entry.getValue();
+
+            json.put(entry.getKey(), new JSONObject()
+                    .put("passes", record.passes)
+                    .put("failures", record.failures)
+                    .put("retries", record.retries)
+                    .put("recent", record.recent)
+                    .put("durationMillis", record.durationMillis));
+        }
+
+        // Only one process at a time holds the lock, so the temporary file doesn't need a unique name
+        writeAtomically(file, json);
+    }
+
+    private static void writeAtomically(Path file, JSONObject json) throws IOException {
+
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try {
+            Files.write(tempFile, json.toString(2).getBytes(StandardCharsets.UTF_8));
+            Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Record that a test is being retried
+     * @param testName Name of the test
+     * @param invocation Name of the test including any parameters, to tell data driven invocations apart
+     */
+    public void recordRetry(String testName, String invocation) {
+
+        pendingRetries.computeIfAbsent(invocation, k -> new AtomicInteger()).incrementAndGet();
+
+        synchronized (this) {
+            getRecord(runCounts, testName).retries++;
+        }
+    }
+
+    /**
+     * Record the final outcome of a test invocation, once it's passed or run out of retries
+     * @param testName Name of the test
+     * @param invocation Name of the test including any parameters, to tell data driven invocations apart
+     */
+    public void recordResult(String testName, String invocation, boolean passed) {
+
+        AtomicInteger retries = pendingRetries.remove(invocation);
+
+        synchronized (this) {
+            Record record = getRecord(runCounts, testName);
+
+            if (passed) {
+                record.passes++;
+                runOutcomes.merge(testName, retries == null ? PASSED : PASSED_ON_RETRY, TestHistory::worse);
+            }
+            else {
+                record.failures++;
+                runOutcomes.merge(testName, FAILED, TestHistory::worse);
+            }
+        }
+    }
+
+    /**
+     * Add time spent running a test in this run, including attempts which are retried
+     * @param testName Name of the test
+     */
+    public void recordDuration(String testName, long millis) {
+        runDurations.computeIfAbsent(testName, k -> new LongAdder()).add(Math.max(millis, 0));
+    }
+
+    /**
+     * @return Average time a run of the test takes in milliseconds, over all its invocations, or -1 if it's never been
+     * timed
+     */
+    public synchronized long getDuration(String testName) {
+        Record record = records.get(testName);
+        return record == null || record.durationMillis <= 0 ? -1 : record.durationMillis;
+    }
+
+    /**
+     * @return Share of the test's recent runs which needed a retry or were a blip between two runs with the other
+     * outcome, or 0 if it hasn't been run enough times to tell
+     */
+    public synchronized double getFlakiness(String testName) {
+        Record record = records.get(testName);
+        return record == null ? 0 : flakiness(record.recent);
+    }
+
+    /**
+     * Work out the flakiness from a string of recent outcomes, oldest first.  A single change from passing to failing,
+     * or back once a fix goes in, doesn't count.  Only a run which differs from the runs either side of it does.
+     */
+    static double flakiness(String recent) {
+
+        if (recent.length() < MIN_RUNS) {
+            return 0;
+        }
+
+        int flaky = 0;
+
+        for (int x = 0; x < recent.length(); x++) {
+            boolean failed = recent.charAt(x) == FAILED;
+
+            if (recent.charAt(x) == PASSED_ON_RETRY) {
+                flaky++;
+            }
+            else if (x > 0 && x < recent.length() - 1 && failed != (recent.charAt(x - 1) == FAILED)
+                    && failed != (recent.charAt(x + 1) == FAILED)) {
+                flaky++;
+            }
+        }
+
+        return (double) flaky / recent.length();
+    }
+
+    static boolean isFlaky(double flakiness) {
+        return flakiness >= QUARANTINE_THRESHOLD;
+    }
+
+    public boolean isFlaky(String testName) {
+        return isFlaky(getFlakiness(testName));
+    }
+
+    /**
+     * @return Recent outcomes of the test, oldest first, or an empty string if it's never been run
+     */
+    public synchronized String getRecentOutcomes(String testName) {
+        Record record = records.get(testName);
+        return record == null ? "" : record.recent;
+    }
+
+    /**
+     * @return Name the test's history is kept under, the class and method name
+     */
+    static String nameOf(ITestResult result) {
+        return result.getMethod().getQualifiedName();
+    }
+
+    /**
+     * @return Name of the test including its parameters, to tell the invocations of a data driven test apart
+     */
+    static String invocationOf(ITestResult result) {
+        return nameOf(result) + Arrays.toString(result.getParameters());
+    }
+
+    /**
+     * @return The worse of two outcomes, a failure being worse than a retry and a retry worse than a pass
+     */
+    private static char worse(char outcome, char other) {
+
+        if (outcome == FAILED || other == FAILED) {
+            return FAILED;
+        }
+
+        return outcome == PASSED_ON_RETRY || other == PASSED_ON_RETRY ? PASSED_ON_RETRY : PASSED;
+    }
+
+    private static Record getRecord(Map<String, Record> records, String testName) {
+        return records.computeIfAbsent(testName, k -> new Record(0, 0, 0, "", 0));
+    }
+
+    private static class Record {
+
+        private int passes;
+        private int failures;
+        private int retries;
+        private String recent;
+        private long durationMillis;
+
+        private Record(int passes, int failures, int retries, String recent, long durationMillis) {
+            this.passes = passes;
+            this.failures = failures;
+            this.retries = retries;
+            this.recent = recent;
+            this.durationMillis = durationMillis;
+        }
+
+        private void addCounts(Record other) {
+            passes += other.passes;
+            failures += other.failures;
+            retries += other.retries;
+        }
+
+        private void addDuration(long millis) {
+            durationMillis = durationMillis <= 0 ? millis
+                    : Math.round(DURATION_WEIGHT * millis + (1 - DURATION_WEIGHT) * durationMillis);
+        }
+
+        private void addOutcome(char outcome) {
+            recent = recent + outcome;
+
+            if (recent.length() > RECENT_RUNS) {
+                recent = recent.substring(recent.length() - RECENT_RUNS);
+            }
+        }
+    }
+}
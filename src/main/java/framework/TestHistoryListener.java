@@ -0,0 +1,93 @@
+package framework;
+
+import org.testng.IAnnotationTransformer;
+import org.testng.IExecutionListener;
+import org.testng.ITestListener;
+import org.testng.ITestResult;
+import org.testng.annotations.ITestAnnotation;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * TestNG listener which records the outcome and duration of every test in the TestHistory file and quarantines flaky
+ * tests.  A test
+ * which TestHistory considers flaky is added to the quarantine group, so a run can leave them out with
+ * -DexcludedGroups=quarantine and they can be run separately with -Dgroups=quarantine.
+ *
+ * Annotation transformers have to be registered with the whole run rather than a test class, so the listener is added
+ * to surefire's configuration in the pom rather than with {@literal @}Listeners.
+ */
+public class TestHistoryListener implements ITestListener, IAnnotationTransformer, IExecutionListener {
+
+    public static final String QUARANTINE_GROUP = "quarantine";
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public void transform(ITestAnnotation annotation, Class testClass, Constructor testConstructor, Method testMethod) {
+
+        if (testMethod == null) {
+            return;
+        }
+
+        String testName = testMethod.getDeclaringClass().getName() + "." + testMethod.getName();
+        TestHistory history = TestHistory.get();
+
+        if (history.isFlaky(testName)) {
+            System.out.println("Quarantining flaky test " + testName + ", recent runs " + history.getRecentOutcomes(testName));
+
+            String[] groups = Arrays.copyOf(annotation.getGroups(), annotation.getGroups().length + 1);
+            groups[groups.length - 1] = QUARANTINE_GROUP;
+            annotation.setGroups(groups);
+        }
+    }
+
+    @Override
+    public void onTestSuccess(ITestResult result) {
+        recordDuration(result);
+        TestHistory.get().recordResult(TestHistory.nameOf(result), TestHistory.invocationOf(result), true);
+    }
+
+    @Override
+    public void onTestFailure(ITestResult result) {
+        recordDuration(result);
+        TestHistory.get().recordResult(TestHistory.nameOf(result), TestHistory.invocationOf(result), false);
+    }
+
+    @Override
+    public void onTestFailedButWithinSuccessPercentage(ITestResult result) {
+        recordDuration(result);
+        TestHistory.get().recordResult(TestHistory.nameOf(result), TestHistory.invocationOf(result), true);
+    }
+
+    /**
+     * Attempts which are going to be retried are reported as skipped, and their time counts towards the test's too
+     */
+    @Override
+    public void onTestSkipped(ITestResult result) {
+        recordDuration(result);
+    }
+
+    private static void recordDuration(ITestResult result) {
+        TestHistory.get().recordDuration(TestHistory.nameOf(result), result.getEndMillis() - result.getStartMillis());
+    }
+
+    /**
+     * Save the history, and if framework.exportShardDurations is set write the test durations there for TestSharder to
+     * use in later runs
+     */
+    @Override
+    public void onExecutionFinish() {
+
+        TestHistory.get().save();
+
+        String exportFile = System.getProperty("framework.exportShardDurations");
+
+        // Unset maven properties come through as the literal ${...} placeholder, or empty
+        if (exportFile != null && !exportFile.isEmpty() && !exportFile.startsWith("${")) {
+            TestHistory.get().exportDurations(Paths.get(exportFile));
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package framework;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.testng.IMethodInstance;
+import org.testng.IMethodInterceptor;
+import org.testng.ITestContext;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Splits the tests between machines or JVM forks so each shard takes about the same time.  Run every shard with the
+ * same framework.shardCount, and framework.shardIndex set from 0 to one less than the count, e.g.
+ * -Dframework.shardCount=4 -Dframework.shardIndex=2
+ *
+ * Tests are packed longest first, each going to the shard with the least work so far.  Ties are broken by name, so the
+ * shards agree on where each test goes without needing to talk to each other, as long as they're all given the same
+ * durations.  These are read from framework.shardDurationsFile, which a previous run writes when
+ * framework.exportShardDurations is set (see TestHistory.exportDurations()), and which should be handed unchanged to
+ * every shard.  The TestHistory file itself is never used, as each shard adds to it as it finishes.  A test which
+ * isn't in the file is counted as taking the median time of the others, and without the file the tests are split
+ * evenly by count.  Each shard logs a hash of its durations, so shards which were given different files can be
+ * spotted.
+ *
+ * A test's data provider invocations always run in the same shard.  Method interceptors have to be registered with the
+ * whole run, so this is added to surefire's configuration in the pom.
+ */
+public class TestSharder implements IMethodInterceptor {
+
+    // Used for every test when none of them have been timed yet, so they're spread evenly by count
+    private static final long DEFAULT_DURATION = 1000;
+
+    private static final int SHARD_COUNT = Integer.getInteger("framework.shardCount", 1);
+    private static final int SHARD_INDEX = Integer.getInteger("framework.shardIndex", 0);
+
+    private static Map<String, Long> knownDurations;
+
+    @Override
+    public List<IMethodInstance> intercept(List<IMethodInstance> methods, ITestContext context) {
+
+        if (SHARD_COUNT <= 1) {
+            return methods;
+        }
+
+        if (SHARD_INDEX < 0 || SHARD_INDEX >= SHARD_COUNT) {
+            throw new IllegalStateException("framework.shardIndex must be from 0 to " + (SHARD_COUNT - 1)
+                    + " but was " + SHARD_INDEX);
+        }
+
+        Map<String, Long> known = getKnownDurations();
+        Map<String, Long> durations = new LinkedHashMap<>();
+
+        for (IMethodInstance method : methods) {
+            String testName = method.getMethod().getQualifiedName();
+            durations.put(testName, known.getOrDefault(testName, -1L));
+        }
+
+        long[] load = new long[SHARD_COUNT];
+        Set<String> assigned = assign(durations, SHARD_INDEX, load);
+        List<IMethodInstance> shard = new ArrayList<>();
+
+        for (IMethodInstance method : methods) {
+            if (assigned.contains(method.getMethod().getQualifiedName())) {
+                shard.add(method);
+            }
+        }
+
+        long shortest = load[0];
+        long longest = load[0];
+
+        for (long shardLoad : load) {
+            shortest = Math.min(shortest, shardLoad);
+            longest = Math.max(longest, shardLoad);
+        }
+
+        System.out.println("Shard " + SHARD_INDEX + " of " + SHARD_COUNT + " running " + assigned.size() + " of "
+                + durations.size() + " tests in " + context.getName() + ", estimated " + load[SHARD_INDEX] / 1000
+                + "s, shards estimated between " + shortest / 1000 + "s and " + longest / 1000 + "s, durations hash "
+                + inputHash(durations));
+
+        return shard;
+    }
+
+    /**
+     * Pack the tests into shards, longest first
+     * @param durations How long each test takes, or -1 if it's not known
+     * @param shardIndex Shard to get the tests for
+     * @param load One entry per shard, filled in with the estimated time of each
+     * @return Names of the tests in the shard
+     */
+    static Set<String> assign(Map<String, Long> durations, int shardIndex, long[] load) {
+
+        long fallback = medianDuration(durations.values());
+        List<Map.Entry<String, Long>> tests = new ArrayList<>();
+
+        for (Map.Entry<String, Long> entry : durations.entrySet()) {
+            tests.add(new AbstractMap.SimpleEntry<>(entry.getKey(),
+                    entry.getValue() < 0 ? fallback : entry.getValue()));
+        }
+
+        tests.sort((a, b) -> {
+            int byDuration = Long.compare(b.getValue(), a.getValue());
+            return byDuration != 0 ? byDuration : a.getKey().compareTo(b.getKey());
+        });
+
+        Set<String> assigned = new HashSet<>();
+
+        for (Map.Entry<String, Long> test : tests) {
+            int shard = 0;
+
+            for (int x = 1; x < load.length; x++) {
+                if (load[x] < load[shard]) {
+                    shard = x;
+                }
+            }
+
+            load[shard] += test.getValue();
+
+            if (shard == shardIndex) {
+                assigned.add(test.getKey());
+            }
+        }
+
+        return assigned;
+    }
+
+    /**
+     * Hash of the tests and durations the shards were worked out from, which should be the same on every shard
+     */
+    static String inputHash(Map<String, Long> durations) {
+        return String.format("%08x", new TreeMap<>(durations).toString().hashCode());
+    }
+
+    /**
+     * Read the durations from framework.shardDurationsFile the first time they're needed
+     */
+    private static synchronized Map<String, Long> getKnownDurations() {
+
+        if (knownDurations == null) {
+            String fileName = System.getProperty("framework.shardDurationsFile");
+
+            // Unset maven properties come through as the literal ${...} placeholder, or empty
+            if (fileName == null || fileName.isEmpty() || fileName.startsWith("${")) {
+                System.out.println("No framework.shardDurationsFile set, splitting tests between shards by count");
+                knownDurations = Collections.emptyMap();
+            }
+            else {
+                knownDurations = readDurations(Paths.get(fileName));
+            }
+        }
+
+        return knownDurations;
+    }
+
+    /**
+     * Read a durations file written by TestHistory.exportDurations().  A missing or unreadable file fails the run
+     * rather than risking the shards disagreeing.
+     */
+    static Map<String, Long> readDurations(Path file) {
+
+        try {
+            JSONObject json = new JSONObject(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+            Map<String, Long> durations = new HashMap<>();
+
+            for (String testName : json.keySet()) {
+                durations.put(testName, json.getLong(testName));
+            }
+
+            return durations;
+        }
+        catch (IOException | JSONException e) {
+            throw new IllegalStateException("Unable to read test durations from " + file, e);
+        }
+    }
+
+    private static long medianDuration(Iterable<Long> durations) {
+
+        List<Long> known = new ArrayList<>();
+
+        for (long duration : durations) {
+            if (duration >= 0) {
+                known.add(duration);
+            }
+        }
+
+        if (known.isEmpty()) {
+            return DEFAULT_DURATION;
+        }
+
+        Collections.sort(known);
+        return known.get(known.size() / 2);
+    }
+}
@@ -1,21 +1,16 @@
 package framework;
 
-import org.apache.commons.lang3.RandomStringUtils;
-import org.apache.commons.lang3.RandomUtils;
-
-import java.util.Random;
-
 /**
- * Class contains any useful utility methods which we want to make use of throughout our framework
+ * Class contains any useful utility methods which we want to make use of throughout our framework.  Random data comes
+ * from the TestDataGenerator for the current thread, so it's reproducible from the run seed.  For lots of data at once
+ * use TestDataGenerator directly.
  */
 public class Util {
 
     private static final int DEFAULT_LENGTH = 10;
 
     public static String getValidEmail(){
-        ConfigManager props = new ConfigManager();
-
-        return props.getEmailUsername() + "+" + getRandomStringOfLength() + props.getEmailDomain();
+        return TestDataGenerator.current().email();
     }
 
     public static String getRandomStringOfLength(){
@@ -23,7 +18,7 @@ public class Util {
     }
 
     public static String getRandomStringOfLength(int length){
-        return RandomStringUtils.randomAlphanumeric(length);
+        return TestDataGenerator.current().alphanumeric(length);
     }
 
     public static long getRandomNumberOfLength(){
@@ -36,21 +31,6 @@ public class Util {
      * @return Random number with specified number of digits
      */
     public static long getRandomNumberOfLength(int length) {
-
-        // We'll limit the length to 18 digits to avoid hitting Long.MAX_VALUE
-        if (length > 18) {
-            throw new IllegalStateException("Max random number length exceeded");
-        }
-
-        Random rng = new Random();
-
-        // If this is the first digit then don't allow a zero value
-        int firstDigit = rng.nextInt(9) + 1;
-
-        // We can then generate any random number for the remaining digits
-        long remainingNDigits = RandomUtils.nextLong(0, (long)(Math.pow(10, (length - 1))));
-
-        // And concatenate them to make a random number with no leading zeros
-        return (firstDigit * (long)(Math.pow(10, length - 1))) + remainingNDigits;
+        return TestDataGenerator.current().number(length);
     }
-}
\ No newline at end of file
+}
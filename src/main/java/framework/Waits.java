@@ -2,16 +2,51 @@ package framework;
 
 import org.openqa.selenium.Alert;
 import org.openqa.selenium.By;
+import org.openqa.selenium.NotFoundException;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
 import org.openqa.selenium.WebElement;
 import org.openqa.selenium.remote.RemoteWebDriver;
-import org.openqa.selenium.support.ui.ExpectedCondition;
 import org.openqa.selenium.support.ui.ExpectedConditions;
-import org.openqa.selenium.support.ui.WebDriverWait;
 
-import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
+/**
+ * Waits for conditions in the browser.  Rather than polling every half a second, which adds up to half a second to
+ * every wait after the condition is already true, conditions on the page itself are checked inside the browser by a
+ * MutationObserver which reports back the moment the DOM changes to match.  Conditions which can't be checked that way,
+ * i.e. alerts, are polled, starting every few milliseconds and backing off the longer we wait.
+ */
 public class Waits {
 
+    private static final long MIN_POLL_INTERVAL_MILLIS = 10;
+    private static final long MAX_POLL_INTERVAL_MILLIS = 250;
+
+    // Longest we leave a script waiting in the browser before checking back in, so we stay well inside the default
+    // script timeout of 30 seconds
+    private static final long MAX_SCRIPT_WAIT_MILLIS = 20000;
+
+    // Runs the check whenever the DOM changes, calling back with the first truthy result or null once we've waited
+    // long enough.  Expects the script to start with a check() function.
+    private static final String OBSERVER_SCRIPT =
+            "var done = arguments[arguments.length - 1];" +
+            "var timeout = arguments[arguments.length - 2];" +
+            "var result = check();" +
+            "if (result) { done(result); return; }" +
+            "var finished = false;" +
+            "var timer;" +
+            "var observer = new MutationObserver(function() {" +
+            "  if (finished) { return; }" +
+            "  var result = check();" +
+            "  if (result) { finished = true; observer.disconnect(); clearTimeout(timer); done(result); }" +
+            "});" +
+            "observer.observe(document, {childList: true, subtree: true, attributes: true, characterData: true});" +
+            "timer = setTimeout(function() { finished = true; observer.disconnect(); done(null); }, timeout);";
+
     private RemoteWebDriver driver;
 
     public Waits(RemoteWebDriver driver) {
@@ -20,27 +55,134 @@ public class Waits {
 
     private final Long DEFAULT_TIMEOUT = 5L;
 
-    // TODO: We could probably make a generic wait method and pass in the expected condition as a parm
+    /**
+     * Keep checking a condition until it returns something other than null or false.  Use this for conditions which
+     * aren't about the contents of the page, for anything on the page untilScriptReturns() will finish sooner.
+     * @param condition Condition to check, i.e. one of Selenium's ExpectedConditions
+     * @return The first non null, non false value returned by the condition
+     */
+    public <T> T until(Function<? super WebDriver, T> condition) {
+        return until(condition, DEFAULT_TIMEOUT);
+    }
 
     /**
-     * Keep check the page title for the supplied number of seconds until it matches one of the supplied strings
-     * @param expectedTitles Array of possible page titles
+     * Keep checking a condition until it returns something other than null or false.  We check again straight away
+     * and then back off, so conditions which are nearly true already finish quickly without flooding the browser with
+     * requests during long waits.
+     * @param condition Condition to check, i.e. one of Selenium's ExpectedConditions
      * @param timeoutSeconds Length of time in seconds we should wait for
+     * @return The first non null, non false value returned by the condition
      */
-    public void pageTitleToContain(String[] expectedTitles, Long timeoutSeconds) {
-        WebDriverWait wait = new WebDriverWait(driver, Duration.ofSeconds(timeoutSeconds));
-        wait.until((ExpectedCondition<Boolean>) driver -> {
+    public <T> T until(Function<? super WebDriver, T> condition, Long timeoutSeconds) {
+
+        long start = System.nanoTime();
+
+        try {
+            return poll(condition, timeoutSeconds);
+        }
+        finally {
+            CommandMetrics.recordWait(driver, start);
+        }
+    }
+
+    private <T> T poll(Function<? super WebDriver, T> condition, Long timeoutSeconds) {
 
-            boolean titleMatches = false;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        long interval = MIN_POLL_INTERVAL_MILLIS;
+        RuntimeException lastError = null;
 
-            for(String expectedTitle : expectedTitles) {
-                if (driver.getTitle().contains(expectedTitle)) {
-                    titleMatches = true;
+        while (true) {
+            try {
+                T result = condition.apply(driver);
+
+                if (result != null && !Boolean.FALSE.equals(result)) {
+                    return result;
                 }
             }
+            catch (NotFoundException | StaleElementReferenceException e) {
+                lastError = e;
+            }
 
-            return titleMatches;
-        });
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+
+            if (remaining <= 0) {
+                throw new TimeoutException("Timed out after " + timeoutSeconds + " seconds waiting for " + condition, lastError);
+            }
+
+            sleep(Math.min(interval, remaining));
+            interval = Math.min(interval * 2, MAX_POLL_INTERVAL_MILLIS);
+        }
+    }
+
+    /**
+     * Wait for a JavaScript check to return a truthy value.  The check runs in the browser whenever the DOM changes, so
+     * we find out as soon as it's true rather than on the next poll.  If the page navigates away while we're waiting
+     * the observer is lost with it, so we poll the check for the rest of the wait instead.
+     * @param check Body of a JavaScript function returning a truthy value once the condition is met.  Any args are
+     *              available to it in the args array.
+     * @param timeoutSeconds Length of time in seconds we should wait for
+     * @param args Arguments for the check
+     * @return The value returned by the check.  DOM elements are returned as WebElements.
+     */
+    public Object untilScriptReturns(String check, Long timeoutSeconds, Object... args) {
+
+        long start = System.nanoTime();
+
+        try {
+            return observe(check, timeoutSeconds, args);
+        }
+        finally {
+            CommandMetrics.recordWait(driver, start);
+        }
+    }
+
+    private Object observe(String check, Long timeoutSeconds, Object... args) {
+
+        String script = "var args = arguments; var check = function() {" + check + "};" + OBSERVER_SCRIPT;
+        Object[] scriptArgs = Arrays.copyOf(args, args.length + 1);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        long remaining;
+
+        while ((remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())) > 0) {
+
+            scriptArgs[args.length] = Math.min(remaining, MAX_SCRIPT_WAIT_MILLIS);
+
+            try {
+                Object result = driver.executeAsyncScript(script, scriptArgs);
+
+                if (result != null && !Boolean.FALSE.equals(result)) {
+                    return result;
+                }
+            }
+            catch (TimeoutException e) {
+                throw e;
+            }
+            catch (WebDriverException e) {
+                // Most likely the page unloaded while the script was waiting.  A check which is broken fails again
+                // straight away when it's polled, so the error still gets back to the test.
+                String pollScript = "var args = arguments; return (function() {" + check + "})();";
+                long secondsLeft = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(deadline - System.nanoTime()));
+
+                return poll(driver -> ((RemoteWebDriver) driver).executeScript(pollScript, args), secondsLeft);
+            }
+        }
+
+        throw new TimeoutException("Timed out after " + timeoutSeconds + " seconds waiting for script: " + check);
+    }
+
+    /**
+     * Keep check the page title for the supplied number of seconds until it matches one of the supplied strings
+     * @param expectedTitles Array of possible page titles
+     * @param timeoutSeconds Length of time in seconds we should wait for
+     */
+    public void pageTitleToContain(String[] expectedTitles, Long timeoutSeconds) {
+        untilScriptReturns(
+                "for (var i = 0; i < args[0].length; i++) {" +
+                "  if (document.title.indexOf(args[0][i]) >= 0) { return true; }" +
+                "}" +
+                "return false;",
+                timeoutSeconds, Arrays.asList(expectedTitles));
     }
 
     public WebElement elementToBePresent(By locator) {
@@ -48,8 +190,14 @@ public class Waits {
     }
 
     public WebElement elementToBePresent(By locator, Long timeoutSeconds) {
-        WebDriverWait wait = new WebDriverWait(driver, Duration.ofSeconds(timeoutSeconds));
-        return wait.until(ExpectedConditions.presenceOfElementLocated(locator));
+
+        // Locators we can't look up ourselves in JavaScript, i.e. link text, are polled for instead
+        if (!JsLocator.isSupported(locator)) {
+            return until(ExpectedConditions.presenceOfElementLocated(locator), timeoutSeconds);
+        }
+
+        return (WebElement) untilScriptReturns(JsLocator.FIND_FUNCTIONS + "return find(args[0], args[1]);",
+                timeoutSeconds, JsLocator.using(locator), JsLocator.value(locator));
     }
 
     public Alert alertToBePresent() {
@@ -57,7 +205,17 @@ public class Waits {
     }
 
     public Alert alertToBePresent(Long timeoutSeconds) {
-        WebDriverWait wait = new WebDriverWait(driver, Duration.ofSeconds(timeoutSeconds));
-        return wait.until(ExpectedConditions.alertIsPresent());
+        // Alerts block JavaScript and aren't part of the DOM, so we have to poll for them
+        return until(ExpectedConditions.alertIsPresent(), timeoutSeconds);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting", e);
+        }
     }
 }
@@ -0,0 +1,19 @@
+package framework.enums;
+
+/**
+ * Kinds of test failure, used to decide whether a failed test is worth running again
+ */
+public enum FailureType {
+    // Timing problems in the page, i.e. a wait timing out or an element going stale
+    TRANSIENT (true),
+    // Problems with the browser or the network rather than the site, i.e. the browser session crashing
+    INFRASTRUCTURE (true),
+    // Anything else, i.e. a failed assertion, which is likely to be a real problem with the site
+    PRODUCT (false);
+
+    public final boolean retryable;
+
+    FailureType(boolean retryable){
+        this.retryable = retryable;
+    }
+}
@@ -0,0 +1,422 @@
+package framework.fixtures;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import framework.enums.TestAccounts;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local stand-in for the parts of the-internet.herokuapp.com our page objects and API tests use, so they can run
+ * without the internet.  Serves the login, secure area, forgot password, email sent and JavaScript error pages with the
+ * same titles, ids and classes as the real site, plus the authenticate and status_codes endpoints.
+ *
+ * Logins are checked against the TestAccounts.  Sessions are kept in memory, keyed by the rack.session cookie the
+ * real site uses.  A session is only started when there's something to keep in it, a login or a flash message, so API
+ * and load test requests which don't send the cookie back don't each leave one behind.  Password reset emails are delivered to a LocalInbox rather than sent.
+ *
+ * Requests are handled by a pool of framework.fixtureThreads threads (defaults to 32), so tests can run in parallel
+ * against it.  The server only listens on the loopback address, so it can't be reached from a Selenium Grid on another
+ * machine.
+ */
+public class FixtureServer {
+
+    private static final String SESSION_COOKIE = "rack.session";
+
+    private static final String RESET_EMAIL_FROM = "no-reply@the-internet.herokuapp.com";
+    private static final String RESET_EMAIL_SUBJECT = "Forgot Password from the-internet";
+
+    private static FixtureServer shared;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final LocalInbox inbox = new LocalInbox();
+
+    // Session id to the username logged in with it, or an empty string if nobody is logged in
+    private final Map<String, String> sessions = new ConcurrentHashMap<>();
+    private final Map<String, String> flashMessages = new ConcurrentHashMap<>();
+
+    private FixtureServer(int port) throws IOException {
+
+        AtomicInteger threadCount = new AtomicInteger();
+
+        executor = Executors.newFixedThreadPool(Integer.getInteger("framework.fixtureThreads", 32), task -> {
+            Thread thread = new Thread(task, "fixture-server-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    /**
+     * Start a server
+     * @param port Port to listen on, or 0 for any free port
+     */
+    public static FixtureServer start(int port) {
+        try {
+            return new FixtureServer(port);
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Unable to start fixture server on port " + port, e);
+        }
+    }
+
+    /**
+     * Start the server shared by the whole test run, on framework.fixturePort (defaults to any free port)
+     */
+    public static synchronized FixtureServer startShared() {
+
+        if (shared == null) {
+            shared = start(Integer.getInteger("framework.fixturePort", 0));
+        }
+
+        return shared;
+    }
+
+    /**
+     * @return The server shared by the whole test run, or null if it isn't running
+     */
+    public static synchronized FixtureServer getShared() {
+        return shared;
+    }
+
+    public static synchronized void stopShared() {
+
+        if (shared != null) {
+            shared.stop();
+            shared = null;
+        }
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return URL of the server, ending in a slash so it can be used as the base_url
+     */
+    public String getBaseURL() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    /**
+     * @return Inbox which password reset emails are delivered to
+     */
+    public LocalInbox getInbox() {
+        return inbox;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+
+        try {
+            String path = exchange.getRequestURI().getPath();
+            boolean post = "POST".equals(exchange.getRequestMethod());
+
+            // Null until something needs a session
+            String session = session(exchange);
+
+            if (path.startsWith("/status_codes/")) {
+                statusCode(exchange, path.substring("/status_codes/".length()));
+                return;
+            }
+
+            switch (path) {
+                case "/":
+                    sendPage(exchange, 200, "<h1 class=\"heading\">Welcome to the-internet</h1>"
+                            + "<ul><li><a href=\"/login\">Form Authentication</a></li>"
+                            + "<li><a href=\"/forgot_password\">Forgot Password</a></li>"
+                            + "<li><a href=\"/javascript_error\">JavaScript onload event error</a></li></ul>");
+                    break;
+                case "/login":
+                    login(exchange, session);
+                    break;
+                case "/authenticate":
+                    authenticate(exchange, session);
+                    break;
+                case "/secure":
+                    secure(exchange, session);
+                    break;
+                case "/logout":
+                    if (session != null) {
+                        sessions.remove(session);
+                        flashMessages.remove(session);
+                    }
+
+                    // The flash message goes in a new session, as the old one has gone
+                    redirect(exchange, null, "/login", "success", "You logged out of the secure area!");
+                    break;
+                case "/forgot_password":
+                    if (post) {
+                        forgotPassword(exchange, session);
+                    }
+                    else {
+                        sendPage(exchange, 200, "<h2>Forgot Password</h2>"
+                                + "<form id=\"forgot_password\" action=\"/forgot_password\" method=\"POST\">"
+                                + "<label for=\"email\">E-mail</label>"
+                                + "<input type=\"text\" id=\"email\" name=\"email\">"
+                                + "<button id=\"form_submit\" type=\"submit\" class=\"radius\">"
+                                + "<i class=\"icon-2x icon-signin\">Retrieve password</i></button></form>");
+                    }
+                    break;
+                case "/email_sent":
+                    sendPage(exchange, 200, "Your e-mail's been sent!");
+                    break;
+                case "/javascript_error":
+                    send(exchange, 200, "<html><head><title>Page with JavaScript errors on load</title>"
+                            + "<link rel=\"icon\" href=\"data:,\"></head>"
+                            + "<body onload=\"loadError()\"><p>This page has a JavaScript error in the onload event. "
+                            + "This is often a problem to using normal Javascript injection techniques.</p></body></html>");
+                    break;
+                case "/favicon.ico":
+                    sendEmpty(exchange, 204);
+                    break;
+                default:
+                    sendPage(exchange, 404, "<h1>Not Found</h1>");
+                    break;
+            }
+        }
+        catch (RuntimeException e) {
+            e.printStackTrace();
+            send(exchange, 500, "<h1>Internal Server Error</h1>");
+        }
+        finally {
+            exchange.close();
+        }
+    }
+
+    private void login(HttpExchange exchange, String session) throws IOException {
+        sendPage(exchange, 200, flash(session)
+                + "<h2>Login Page</h2>"
+                + "<form name=\"login\" id=\"login\" action=\"/authenticate\" method=\"post\">"
+                + "<label for=\"username\">Username</label><input type=\"text\" name=\"username\" id=\"username\">"
+                + "<label for=\"password\">Password</label><input type=\"password\" name=\"password\" id=\"password\">"
+                + "<button class=\"radius\" type=\"submit\"><i class=\"fa fa-2x fa-sign-in\"> Login</i></button>"
+                + "</form>");
+    }
+
+    private void authenticate(HttpExchange exchange, String session) throws IOException {
+
+        Map<String, String> form = readForm(exchange);
+        String username = form.getOrDefault("username", "");
+        String password = form.getOrDefault("password", "");
+
+        for (TestAccounts account : TestAccounts.values()) {
+            if (account.username.equals(username)) {
+
+                if (!account.password.equals(password)) {
+                    redirect(exchange, session, "/login", "error", "Your password is invalid!");
+                    return;
+                }
+
+                session = startSession(exchange, session);
+                sessions.put(session, username);
+                redirect(exchange, session, "/secure", "success", "You logged into a secure area!");
+                return;
+            }
+        }
+
+        redirect(exchange, session, "/login", "error", "Your username is invalid!");
+    }
+
+    private void secure(HttpExchange exchange, String session) throws IOException {
+
+        String username = session == null ? null : sessions.get(session);
+
+        if (username == null || username.isEmpty()) {
+            redirect(exchange, session, "/login", "error", "You must login to view the secure area!");
+            return;
+        }
+
+        sendPage(exchange, 200, flash(session)
+                + "<h2><i class=\"icon-lock\"></i> Secure Area</h2>"
+                + "<h4 class=\"subheader\">Welcome to the Secure Area. When you are done click logout below.</h4>"
+                + "<a class=\"button secondary radius\" href=\"/logout\"><i class=\"icon-2x icon-signout\"> Logout</i></a>");
+    }
+
+    private void forgotPassword(HttpExchange exchange, String session) throws IOException {
+
+        String email = readForm(exchange).getOrDefault("email", "");
+
+        // The real site always sends the details of its one account, whoever asks
+        inbox.deliver(RESET_EMAIL_FROM, email, RESET_EMAIL_SUBJECT,
+                "Someone requested that the password be reset for the following account:\n\n"
+                        + "username: " + TestAccounts.CUSTOMER.username + "\n"
+                        + "password: " + TestAccounts.CUSTOMER.password + "\n");
+
+        redirect(exchange, session, "/email_sent", null, null);
+    }
+
+    private void statusCode(HttpExchange exchange, String code) throws IOException {
+
+        int status;
+
+        try {
+            status = Integer.parseInt(code);
+        }
+        catch (NumberFormatException e) {
+            status = 404;
+        }
+
+        if (status < 200 || status > 599) {
+            status = 404;
+        }
+
+        sendPage(exchange, status, "<h3>Status Codes</h3><p>This page returned a " + status + " status code.</p>");
+    }
+
+    /**
+     * Get the session id from the request's cookie
+     * @return The session, or null if the request doesn't belong to one
+     */
+    private String session(HttpExchange exchange) {
+
+        String cookies = exchange.getRequestHeaders().getFirst("Cookie");
+
+        if (cookies != null) {
+            for (String cookie : cookies.split(";")) {
+                String[] parts = cookie.trim().split("=", 2);
+
+                if (parts.length == 2 && parts[0].equals(SESSION_COOKIE) && sessions.containsKey(parts[1])) {
+                    return parts[1];
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Start a new session for the request if it doesn't already have one, sending the cookie back with the response
+     */
+    private String startSession(HttpExchange exchange, String session) {
+
+        if (session != null) {
+            return session;
+        }
+
+        String newSession = UUID.randomUUID().toString();
+        sessions.put(newSession, "");
+        exchange.getResponseHeaders().add("Set-Cookie", SESSION_COOKIE + "=" + newSession + "; path=/; HttpOnly");
+
+        return newSession;
+    }
+
+    /**
+     * Get and clear the flash message for the session, as HTML
+     */
+    private String flash(String session) {
+
+        String message = session == null ? null : flashMessages.remove(session);
+        return message == null ? "" : message;
+    }
+
+    /**
+     * Redirect to another page, showing a flash message on it.  Uses a 303 so clients following the redirect after a
+     * POST switch to a GET, as the real site does.
+     */
+    private void redirect(HttpExchange exchange, String session, String location, String flashType, String message) throws IOException {
+
+        if (message != null) {
+            flashMessages.put(startSession(exchange, session), "<div id=\"flash-messages\"><div class=\"flash " + flashType
+                    + "\" id=\"flash\">" + message + "<a class=\"close\" href=\"#\">&times;</a></div></div>");
+        }
+
+        exchange.getResponseHeaders().add("Location", location);
+        sendEmpty(exchange, 303);
+    }
+
+    private static Map<String, String> readForm(HttpExchange exchange) throws IOException {
+
+        Map<String, String> form = new HashMap<>();
+        String body = new String(readAll(exchange.getRequestBody()), StandardCharsets.UTF_8);
+
+        for (String pair : body.split("&")) {
+            String[] parts = pair.split("=", 2);
+
+            if (parts.length == 2) {
+                form.put(decode(parts[0]), decode(parts[1]));
+            }
+        }
+
+        return form;
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        }
+        catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 not supported", e);
+        }
+    }
+
+    private static byte[] readAll(InputStream input) throws IOException {
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+
+        while ((read = input.read(buffer)) != -1) {
+            output.write(buffer, 0, read);
+        }
+
+        return output.toByteArray();
+    }
+
+    /**
+     * Send a page using the same layout as the real site
+     */
+    private static void sendPage(HttpExchange exchange, int status, String content) throws IOException {
+        send(exchange, status, "<!DOCTYPE html><html><head><title>The Internet</title>"
+                + "<link rel=\"icon\" href=\"data:,\"></head><body>"
+                + "<div class=\"row\"><div id=\"content\" class=\"large-12 columns\">" + content + "</div></div>"
+                + "<div id=\"page-footer\" class=\"row\"><hr>Powered by a local fixture server</div>"
+                + "</body></html>");
+    }
+
+    /**
+     * Send a response with no body.  The server only keeps the connection open for the next request once the request
+     * body has been read to the end, which sending a body does for us, so here it has to be done first.
+     */
+    private static void sendEmpty(HttpExchange exchange, int status) throws IOException {
+        exchange.getRequestBody().close();
+        exchange.sendResponseHeaders(status, -1);
+    }
+
+    private static void send(HttpExchange exchange, int status, String html) throws IOException {
+
+        // Informational, 204 and 304 responses never have a body
+        if (status < 200 || status == 204 || status == 304) {
+            sendEmpty(exchange, status);
+            return;
+        }
+
+        byte[] body = html.getBytes(StandardCharsets.UTF_8);
+
+        exchange.getResponseHeaders().add("Content-Type", "text/html;charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(body);
+        }
+    }
+}
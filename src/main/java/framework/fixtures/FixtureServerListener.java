@@ -0,0 +1,36 @@
+package framework.fixtures;
+
+import framework.ConfigManager;
+import org.testng.IExecutionListener;
+
+/**
+ * TestNG listener which starts the FixtureServer before any tests run and points the base_url at it, so the page
+ * objects and API tests run against it rather than the real site.  Only does anything if framework.fixtureServer is
+ * set, i.e. with the Offline profile.
+ *
+ * The base_url has to be changed before any test reads the config, so the listener is registered for the whole run
+ * through surefire's configuration in the pom rather than with {@literal @}Listeners.
+ */
+public class FixtureServerListener implements IExecutionListener {
+
+    @Override
+    public void onExecutionStart() {
+
+        if (!Boolean.parseBoolean(System.getProperty("framework.fixtureServer"))) {
+            return;
+        }
+
+        FixtureServer server = FixtureServer.startShared();
+
+        // System properties take precedence over the config files
+        System.setProperty("base_url", server.getBaseURL());
+        ConfigManager.reload();
+
+        System.out.println("Fixture server started at " + server.getBaseURL());
+    }
+
+    @Override
+    public void onExecutionFinish() {
+        FixtureServer.stopShared();
+    }
+}
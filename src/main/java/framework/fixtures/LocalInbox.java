@@ -0,0 +1,113 @@
+package framework.fixtures;
+
+import framework.Inbox;
+
+import javax.mail.Address;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In memory stand-in for a mail server, which the FixtureServer delivers emails to instead of sending them.  Emails
+ * are held until a test waits for them, and each email is only handed to one test.
+ */
+public class LocalInbox implements Inbox {
+
+    private final Session session = Session.getInstance(new Properties());
+    private final List<MimeMessage> emails = new ArrayList<>();
+
+    /**
+     * Deliver an email to the inbox, waking up anyone waiting for it
+     */
+    public void deliver(String from, String to, String subject, String body) {
+
+        try {
+            MimeMessage email = new MimeMessage(session);
+            email.setFrom(new InternetAddress(from));
+            email.setRecipient(Message.RecipientType.TO, new InternetAddress(to));
+            email.setSubject(subject);
+            email.setText(body);
+            email.saveChanges();
+
+            synchronized (this) {
+                emails.add(email);
+                notifyAll();
+            }
+        }
+        catch (MessagingException e) {
+            throw new IllegalStateException("Unable to deliver email to " + to, e);
+        }
+    }
+
+    @Override
+    public synchronized Message waitForEmail(String recipient, String subject, long timeoutMillis) {
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+        try {
+            while (true) {
+                MimeMessage email = take(recipient, subject);
+
+                if (email != null) {
+                    return email;
+                }
+
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+
+                if (remaining <= 0) {
+                    return null;
+                }
+
+                wait(remaining);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * Remove and return the first email sent to the recipient with the subject in its subject line, matching the way
+     * MailboxWatcher does
+     */
+    private MimeMessage take(String recipient, String subject) {
+
+        Iterator<MimeMessage> iterator = emails.iterator();
+
+        while (iterator.hasNext()) {
+            MimeMessage email = iterator.next();
+
+            try {
+                Address[] recipients = email.getRecipients(Message.RecipientType.TO);
+
+                // The recipient has to match exactly, or waiting for a@x.com would take an email meant for ba@x.com
+                if (recipients != null && recipients.length > 0 && recipients[0] instanceof InternetAddress
+                        && ((InternetAddress) recipients[0]).getAddress().equalsIgnoreCase(recipient)
+                        && email.getSubject().toLowerCase().contains(subject.toLowerCase())) {
+                    iterator.remove();
+                    return email;
+                }
+            }
+            catch (MessagingException e) {
+                e.printStackTrace();
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return Number of emails delivered which no test has taken yet
+     */
+    public synchronized int size() {
+        return emails.size();
+    }
+}
@@ -0,0 +1,18 @@
+package framework.load;
+
+import framework.RestResponse;
+import org.apache.http.client.CookieStore;
+
+/**
+ * A single timed step in a load test scenario, usually submitting one RestRequest
+ */
+@FunctionalInterface
+public interface LoadStep {
+
+    /**
+     * @param cookies Cookie store shared by all the steps in one run of the scenario, so later steps can use a session
+     *                set up by earlier ones
+     * @return Response to the step's request
+     */
+    RestResponse run(CookieStore cookies);
+}
@@ -0,0 +1,190 @@
+package framework.load;
+
+import org.HdrHistogram.Histogram;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Results of a load test run.  Latencies are held in HDR histograms so percentiles are accurate right out to the tail,
+ * and the whole report can be written out as JSON for CI to pick up and compare between runs.
+ */
+public class LoadTestReport {
+
+    private static final double[] REPORTED_PERCENTILES = {50, 90, 99, 99.9};
+
+    private final String name;
+    private final LoadTestRunner.loadModel model;
+    private final double target;
+    private final long durationMillis;
+    private final Histogram scenarioLatency;
+    private final Map<String, Histogram> stepLatencies;
+    private final Map<Integer, Long> statusCodes = new TreeMap<>();
+    private final Map<String, Long> errors = new TreeMap<>();
+
+    LoadTestReport(String name, LoadTestRunner.loadModel model, double target, long durationMillis,
+                   Histogram scenarioLatency, Map<String, Histogram> stepLatencies,
+                   Map<Integer, LongAdder> statusCodes, Map<String, LongAdder> errors) {
+        this.name = name;
+        this.model = model;
+        this.target = target;
+        this.durationMillis = durationMillis;
+        this.scenarioLatency = scenarioLatency;
+        this.stepLatencies = Collections.unmodifiableMap(stepLatencies);
+        statusCodes.forEach((code, count) -> this.statusCodes.put(code, count.sum()));
+        errors.forEach((type, count) -> this.errors.put(type, count.sum()));
+    }
+
+    /**
+     * @return Number of complete runs of the scenario
+     */
+    public long getCompletedScenarios() {
+        return scenarioLatency.getTotalCount();
+    }
+
+    /**
+     * @return Complete runs of the scenario per second
+     */
+    public double getThroughput() {
+        return durationMillis == 0 ? 0 : getCompletedScenarios() * 1000.0 / durationMillis;
+    }
+
+    /**
+     * Get the latency at a given percentile for the whole scenario
+     * @param percentile Percentile, i.e. 99.9
+     * @return Latency in milliseconds
+     */
+    public double getLatencyMillis(double percentile) {
+        return scenarioLatency.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    /**
+     * Get the latency at a given percentile for a single step
+     * @param stepName Name of the step
+     * @param percentile Percentile, i.e. 99.9
+     * @return Latency in milliseconds
+     */
+    public double getStepLatencyMillis(String stepName, double percentile) {
+        Histogram histogram = stepLatencies.get(stepName);
+
+        if (histogram == null) {
+            throw new IllegalStateException("No step named '" + stepName + "' in load test '" + name + "'");
+        }
+
+        return histogram.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    /**
+     * @return Number of responses received with each status code
+     */
+    public Map<Integer, Long> getStatusCodes() {
+        return Collections.unmodifiableMap(statusCodes);
+    }
+
+    /**
+     * @return Number of steps which failed without a response, by exception type
+     */
+    public Map<String, Long> getErrors() {
+        return Collections.unmodifiableMap(errors);
+    }
+
+    /**
+     * @return Number of steps which either failed without a response or got a 4xx/5xx response
+     */
+    public long getErrorCount() {
+        long count = 0;
+
+        for (Map.Entry<Integer, Long> status : statusCodes.entrySet()) {
+            if (status.getKey() >= 400) {
+                count += status.getValue();
+            }
+        }
+
+        for (long errorCount : errors.values()) {
+            count += errorCount;
+        }
+
+        return count;
+    }
+
+    public JSONObject toJSON() {
+
+        JSONObject json = new JSONObject();
+        json.put("name", name);
+        json.put("model", model.name().toLowerCase());
+        json.put(model == LoadTestRunner.loadModel.OPEN ? "targetRatePerSecond" : "concurrency", target);
+        json.put("durationMillis", durationMillis);
+        json.put("completedScenarios", getCompletedScenarios());
+        json.put("throughputPerSecond", getThroughput());
+        json.put("errorCount", getErrorCount());
+        json.put("latency", latencyToJSON(scenarioLatency));
+
+        JSONObject steps = new JSONObject();
+        stepLatencies.forEach((stepName, histogram) -> steps.put(stepName, latencyToJSON(histogram)));
+        json.put("steps", steps);
+
+        JSONObject codes = new JSONObject();
+        statusCodes.forEach((code, count) -> codes.put(String.valueOf(code), count));
+        json.put("statusCodes", codes);
+
+        json.put("errors", new JSONObject(errors));
+
+        return json;
+    }
+
+    /**
+     * Write the report to a JSON file, creating any missing folders
+     * @param file File to write to
+     */
+    public void writeJSON(Path file) {
+
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+
+            Files.write(file, toJSON().toString(2).getBytes(StandardCharsets.UTF_8));
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Unable to write load test report to " + file, e);
+        }
+    }
+
+    private static JSONObject latencyToJSON(Histogram histogram) {
+
+        JSONObject json = new JSONObject();
+        json.put("count", histogram.getTotalCount());
+
+        if (histogram.getTotalCount() == 0) {
+            return json;
+        }
+
+        json.put("minMillis", histogram.getMinValue() / 1000.0);
+        json.put("meanMillis", histogram.getMean() / 1000.0);
+
+        for (double percentile : REPORTED_PERCENTILES) {
+            json.put("p" + String.valueOf(percentile).replace(".0", "").replace(".", "_") + "Millis",
+                    histogram.getValueAtPercentile(percentile) / 1000.0);
+        }
+
+        json.put("maxMillis", histogram.getMaxValue() / 1000.0);
+
+        return json;
+    }
+
+    @Override
+    public String toString() {
+        return "Load test '" + name + "': " + getCompletedScenarios() + " scenarios in " + durationMillis + "ms ("
+                + String.format("%.1f", getThroughput()) + "/s), "
+                + "p50 " + getLatencyMillis(50) + "ms, p99 " + getLatencyMillis(99) + "ms, p99.9 " + getLatencyMillis(99.9) + "ms, "
+                + getErrorCount() + " errors, status codes " + statusCodes;
+    }
+}
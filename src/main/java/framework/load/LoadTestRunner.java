@@ -0,0 +1,304 @@
+package framework.load;
+
+import framework.RestAPIHelper;
+import framework.RestRequest;
+import framework.RestResponse;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.apache.http.impl.client.BasicCookieStore;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs a scenario made up of the same RestRequests we use in our API tests as a load test.  Each run of the scenario
+ * submits its steps in order, sharing a cookie store, and the latency of every step is recorded.
+ *
+ * Load can be generated with either an open model, where new runs of the scenario are started at a fixed rate no
+ * matter how quickly the server responds, or a closed model, where a fixed number of virtual users each start a new run
+ * as soon as their previous one finishes.  In the open model latency is measured from when each run should have
+ * started, so a server which falls behind shows up in the results rather than just slowing the test down.
+ *
+ * LoadTestReport report = LoadTestRunner.scenario("login")
+ *         .step("authenticate", loginRequest)
+ *         .atRate(50)
+ *         .forDuration(Duration.ofMinutes(1))
+ *         .run();
+ */
+public class LoadTestRunner {
+
+    // Track latencies of up to an hour, in microseconds, to 3 significant figures
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.HOURS.toMicros(1);
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private final String name;
+    private final Map<String, LoadStep> steps = new LinkedHashMap<>();
+
+    private loadModel model = loadModel.CLOSED;
+    private double ratePerSecond;
+    private int concurrency = 1;
+    private int maxInFlight = RestAPIHelper.getMaxConnectionsPerRoute();
+    private Duration duration = Duration.ofSeconds(30);
+    private Duration warmup = Duration.ZERO;
+
+    private LoadTestRunner(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Start defining a new load test scenario
+     * @param name Name of the scenario, used in the report
+     */
+    public static LoadTestRunner scenario(String name) {
+        return new LoadTestRunner(name);
+    }
+
+    /**
+     * Add a step which submits the supplied request
+     * @param stepName Name of the step, used in the report
+     * @param request Request to submit
+     */
+    public LoadTestRunner step(String stepName, RestRequest request) {
+        return step(stepName, cookies -> RestAPIHelper.execute(request, cookies));
+    }
+
+    /**
+     * Add a custom step, i.e. one which builds its request from data set up earlier in the scenario
+     * @param stepName Name of the step, used in the report
+     * @param step Step to run
+     */
+    public LoadTestRunner step(String stepName, LoadStep step) {
+        steps.put(stepName, step);
+        return this;
+    }
+
+    /**
+     * Use the open model, starting new runs of the scenario at a fixed rate
+     * @param ratePerSecond Number of runs of the scenario to start each second
+     */
+    public LoadTestRunner atRate(double ratePerSecond) {
+
+        if (ratePerSecond <= 0) {
+            throw new IllegalStateException("Rate must be greater than zero");
+        }
+
+        model = loadModel.OPEN;
+        this.ratePerSecond = ratePerSecond;
+        return this;
+    }
+
+    /**
+     * Use the closed model, with a fixed number of virtual users running the scenario back to back
+     * @param concurrency Number of virtual users
+     */
+    public LoadTestRunner withConcurrency(int concurrency) {
+
+        if (concurrency < 1) {
+            throw new IllegalStateException("Concurrency must be at least 1");
+        }
+
+        model = loadModel.CLOSED;
+        this.concurrency = concurrency;
+        return this;
+    }
+
+    /**
+     * Limit the number of runs of the scenario which can be in progress at once in the open model.  Runs which can't be
+     * started on time are queued, and the time spent queueing is included in their latency.
+     *
+     * Defaults to RestAPIHelper's connection limit per host.  Going above it means runs also wait for a pooled
+     * connection, which is counted in their latency too, so raise framework.httpMaxConnectionsPerRoute to match.
+     * @param maxInFlight Max number of runs in progress at once
+     */
+    public LoadTestRunner maxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+        return this;
+    }
+
+    /**
+     * @param duration Length of time to generate load for, after the warmup
+     */
+    public LoadTestRunner forDuration(Duration duration) {
+        this.duration = duration;
+        return this;
+    }
+
+    /**
+     * @param warmup Length of time to generate load for before we start recording results
+     */
+    public LoadTestRunner withWarmup(Duration warmup) {
+        this.warmup = warmup;
+        return this;
+    }
+
+    /**
+     * Run the load test, blocking until it's finished
+     * @return Results of the test
+     */
+    public LoadTestReport run() {
+
+        if (steps.isEmpty()) {
+            throw new IllegalStateException("Load test scenario '" + name + "' has no steps");
+        }
+
+        Results results = new Results(steps.keySet());
+
+        long start = System.nanoTime();
+        long measureFrom = start + warmup.toNanos();
+        long end = measureFrom + duration.toNanos();
+
+        if (model == loadModel.OPEN) {
+            runOpenModel(results, start, measureFrom, end);
+        }
+        else {
+            runClosedModel(results, measureFrom, end);
+        }
+
+        long measuredNanos = Math.max(System.nanoTime(), end) - measureFrom;
+
+        return new LoadTestReport(name, model, model == loadModel.OPEN ? ratePerSecond : concurrency,
+                TimeUnit.NANOSECONDS.toMillis(measuredNanos), results.scenarioLatency, results.stepLatencies,
+                results.statusCodes, results.errors);
+    }
+
+    private void runOpenModel(Results results, long start, long measureFrom, long end) {
+
+        ExecutorService workers = Executors.newFixedThreadPool(maxInFlight, loadThreads());
+        long interval = (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond);
+        long next = start;
+
+        while (next < end) {
+            long wait;
+
+            while ((wait = next - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+
+            long intendedStart = next;
+            workers.execute(() -> runScenario(results, intendedStart, intendedStart >= measureFrom));
+            next += interval;
+        }
+
+        awaitCompletion(workers);
+    }
+
+    private void runClosedModel(Results results, long measureFrom, long end) {
+
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency, loadThreads());
+
+        for (int x = 0; x < concurrency; x++) {
+            workers.execute(() -> {
+                long scenarioStart;
+
+                while ((scenarioStart = System.nanoTime()) < end) {
+                    runScenario(results, scenarioStart, scenarioStart >= measureFrom);
+                }
+            });
+        }
+
+        awaitCompletion(workers);
+    }
+
+    /**
+     * Run each step of the scenario in turn, stopping if a step fails
+     * @param scenarioStart When the scenario started, or should have started in the open model
+     * @param record False while we're warming up
+     */
+    private void runScenario(Results results, long scenarioStart, boolean record) {
+
+        BasicCookieStore cookies = new BasicCookieStore();
+        long stepStart = scenarioStart;
+
+        for (Map.Entry<String, LoadStep> step : steps.entrySet()) {
+
+            RestResponse response;
+
+            try {
+                response = step.getValue().run(cookies);
+            }
+            catch (RuntimeException e) {
+                if (record) {
+                    results.errors.computeIfAbsent(e.getClass().getSimpleName(), key -> new LongAdder()).increment();
+                }
+                return;
+            }
+
+            long stepEnd = System.nanoTime();
+
+            if (record) {
+                results.recordStep(step.getKey(), stepEnd - stepStart);
+                results.statusCodes.computeIfAbsent(response.getResponseCode(), key -> new LongAdder()).increment();
+            }
+
+            stepStart = stepEnd;
+        }
+
+        if (record) {
+            results.scenarioLatency.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(stepStart - scenarioStart), HIGHEST_TRACKABLE_MICROS));
+        }
+    }
+
+    private void awaitCompletion(ExecutorService workers) {
+        workers.shutdown();
+
+        try {
+            while (!workers.awaitTermination(1, TimeUnit.MINUTES)) {
+                System.out.println("Waiting for load test '" + name + "' requests to finish");
+            }
+        }
+        catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private ThreadFactory loadThreads() {
+        AtomicInteger count = new AtomicInteger();
+
+        return runnable -> {
+            Thread thread = new Thread(runnable, "load-" + name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static Histogram newHistogram() {
+        return new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+    }
+
+    /**
+     * Everything recorded during a single run of the load test
+     */
+    private static class Results {
+
+        private final Histogram scenarioLatency = newHistogram();
+        private final Map<String, Histogram> stepLatencies = new LinkedHashMap<>();
+        private final Map<Integer, LongAdder> statusCodes = new ConcurrentHashMap<>();
+        private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+        // Histograms are created up front, in step order, so the map itself is never changed during the test
+        private Results(Iterable<String> stepNames) {
+            for (String stepName : stepNames) {
+                stepLatencies.put(stepName, newHistogram());
+            }
+        }
+
+        private void recordStep(String stepName, long latencyNanos) {
+            stepLatencies.get(stepName).recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(latencyNanos), HIGHEST_TRACKABLE_MICROS));
+        }
+    }
+
+    public enum loadModel {
+        OPEN,
+        CLOSED
+    }
+}
@@ -0,0 +1,38 @@
+package framework.visual;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * A baseline image, decoded once and kept with the hash of each of its tiles so screenshots can be compared against it
+ * without having to work the hashes out again
+ */
+public class Baseline {
+
+    private final int width;
+    private final int height;
+    private final int[] pixels;
+    private final long[] tileHashes;
+
+    public Baseline(BufferedImage image) {
+        width = image.getWidth();
+        height = image.getHeight();
+        pixels = ImageComparator.toRgbPixels(image);
+        tileHashes = ImageComparator.hashTiles(pixels, new ImageComparator.TileGrid(width, height, null));
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    int[] getPixels() {
+        return pixels;
+    }
+
+    long getTileHash(int tile) {
+        return tileHashes[tile];
+    }
+}
@@ -0,0 +1,124 @@
+package framework.visual;
+
+import framework.ConfigManager;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Baseline images for the visual checks, stored as png files in the folder specified by baseline_path in the config
+ * file.  Decoding a png takes far longer than comparing it, so each baseline is decoded once and then kept in memory
+ * for the rest of the run.
+ */
+public class BaselineStore {
+
+    private static final Map<Path, BaselineStore> stores = new ConcurrentHashMap<>();
+
+    private final Path folder;
+    private final Map<String, Baseline> baselines = new ConcurrentHashMap<>();
+
+    private BaselineStore(Path folder) {
+        this.folder = folder;
+    }
+
+    /**
+     * Get the store for the baseline folder defined in the config
+     */
+    public static BaselineStore forConfiguredFolder() {
+        return forFolder(ConfigManager.get().getBaselinePath());
+    }
+
+    public static BaselineStore forFolder(Path folder) {
+        return stores.computeIfAbsent(folder.toAbsolutePath().normalize(), BaselineStore::new);
+    }
+
+    /**
+     * @param name Name of the baseline without file extension
+     * @return The baseline, or null if there isn't one with that name yet
+     */
+    public Baseline get(String name) {
+
+        Baseline baseline = baselines.get(name);
+
+        if (baseline != null) {
+            return baseline;
+        }
+
+        Path file = fileFor(name);
+
+        if (!Files.exists(file)) {
+            return null;
+        }
+
+        try {
+            BufferedImage image = ImageIO.read(file.toFile());
+
+            if (image == null) {
+                throw new IllegalStateException("Baseline is not a valid image: " + file);
+            }
+
+            // If another thread got there first use its copy, there's no harm in having decoded it twice
+            Baseline loaded = baselines.putIfAbsent(name, new Baseline(image));
+            return loaded != null ? loaded : baselines.get(name);
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Unable to read baseline " + file, e);
+        }
+    }
+
+    /**
+     * Save a screenshot as the new baseline, replacing any existing one
+     * @param name Name of the baseline without file extension
+     * @param png Screenshot image, as returned by WebDriver
+     * @return The new baseline
+     */
+    public Baseline save(String name, byte[] png) {
+
+        try {
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+
+            if (image == null) {
+                throw new IllegalStateException("Screenshot is not a valid image");
+            }
+
+            return save(name, png, image);
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Unable to read screenshot for baseline " + name, e);
+        }
+    }
+
+    /**
+     * Save a screenshot which has already been decoded as the new baseline, replacing any existing one
+     * @param name Name of the baseline without file extension
+     * @param png Screenshot image, as returned by WebDriver
+     * @param image The same screenshot, decoded
+     * @return The new baseline
+     */
+    public Baseline save(String name, byte[] png, BufferedImage image) {
+
+        Path file = fileFor(name);
+
+        try {
+            Files.createDirectories(file.getParent());
+            Files.write(file, png);
+
+            Baseline baseline = new Baseline(image);
+            baselines.put(name, baseline);
+            return baseline;
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Unable to save baseline " + file, e);
+        }
+    }
+
+    private Path fileFor(String name) {
+        return folder.resolve(name + ".png");
+    }
+}
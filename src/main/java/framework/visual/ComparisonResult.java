@@ -0,0 +1,99 @@
+package framework.visual;
+
+import java.awt.image.BufferedImage;
+import java.util.function.Supplier;
+
+/**
+ * Result of comparing a screenshot against its baseline.  The diff image is only drawn if somebody asks for it, which
+ * should only be when the comparison has failed.
+ */
+public class ComparisonResult {
+
+    private final int width;
+    private final int height;
+    private final long mismatchedPixels;
+    private final long comparedPixels;
+    private final int changedTiles;
+    private final String sizeMismatch;
+    private final Supplier<BufferedImage> diffImage;
+
+    ComparisonResult(int width, int height, long mismatchedPixels, long comparedPixels, int changedTiles,
+                     Supplier<BufferedImage> diffImage) {
+        this(width, height, mismatchedPixels, comparedPixels, changedTiles, null, diffImage);
+    }
+
+    private ComparisonResult(int width, int height, long mismatchedPixels, long comparedPixels, int changedTiles,
+                             String sizeMismatch, Supplier<BufferedImage> diffImage) {
+        this.width = width;
+        this.height = height;
+        this.mismatchedPixels = mismatchedPixels;
+        this.comparedPixels = comparedPixels;
+        this.changedTiles = changedTiles;
+        this.sizeMismatch = sizeMismatch;
+        this.diffImage = diffImage;
+    }
+
+    static ComparisonResult sizeMismatch(int width, int height, int actualWidth, int actualHeight) {
+        long pixels = (long) width * height;
+        String message = "Expected " + width + "x" + height + " but screenshot was " + actualWidth + "x" + actualHeight;
+
+        return new ComparisonResult(width, height, pixels, pixels, -1, message, () -> null);
+    }
+
+    /**
+     * @param maxMismatchedPixels Number of changed pixels we can put up with, i.e. to allow for a flashing cursor
+     * @return True if the screenshot is the same size as the baseline and no more than the allowed number of pixels
+     * have changed
+     */
+    public boolean matches(long maxMismatchedPixels) {
+        return sizeMismatch == null && mismatchedPixels <= maxMismatchedPixels;
+    }
+
+    public long getMismatchedPixels() {
+        return mismatchedPixels;
+    }
+
+    /**
+     * @return Number of pixels compared, i.e. not including any ignored regions
+     */
+    public long getComparedPixels() {
+        return comparedPixels;
+    }
+
+    /**
+     * @return Fraction of the compared pixels which have changed, between 0 and 1
+     */
+    public double getMismatchRatio() {
+        return comparedPixels == 0 ? 0 : (double) mismatchedPixels / comparedPixels;
+    }
+
+    /**
+     * @return Number of tiles containing changed pixels, or -1 if the screenshot was a different size
+     */
+    public int getChangedTiles() {
+        return changedTiles;
+    }
+
+    public boolean isSizeMismatch() {
+        return sizeMismatch != null;
+    }
+
+    /**
+     * @return The screenshot with changed pixels in red and ignored regions in grey, or null if the screenshot was a
+     * different size to the baseline
+     */
+    public BufferedImage getDiffImage() {
+        return diffImage.get();
+    }
+
+    @Override
+    public String toString() {
+
+        if (sizeMismatch != null) {
+            return sizeMismatch;
+        }
+
+        return String.format("%d of %d pixels (%.3f%%) changed in %d tiles, image size %dx%d", mismatchedPixels,
+                comparedPixels, getMismatchRatio() * 100, changedTiles, width, height);
+    }
+}
@@ -0,0 +1,361 @@
+package framework.visual;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares screenshots against a baseline image.  The images are split into tiles which are compared in parallel on
+ * the fork/join pool.  Each tile of the baseline has a hash worked out once when the baseline is loaded, so tiles which
+ * haven't changed (nearly all of them, on a passing test) only need a single pass over the new screenshot to rule out.
+ * Tiles whose hashes differ are compared pixel by pixel, allowing a small per channel tolerance so anti-aliasing noise
+ * isn't reported as a change.
+ */
+public class ImageComparator {
+
+    static final int TILE_SIZE = 64;
+
+    // Number of tiles each fork/join task handles before it stops splitting the work
+    private static final int TILES_PER_TASK = 16;
+
+    private static final int DIFF_COLOUR = 0xFF0000;
+    private static final int IGNORED_COLOUR = 0x808080;
+
+    private final int channelTolerance;
+
+    /**
+     * @param channelTolerance How far any of the red, green or blue values of a pixel can be from the baseline before
+     *                         the pixel counts as changed (0 - 255)
+     */
+    public ImageComparator(int channelTolerance) {
+        this.channelTolerance = channelTolerance;
+    }
+
+    /**
+     * Compare a screenshot against a baseline
+     * @param baseline Baseline image, as loaded by the BaselineStore
+     * @param actual Screenshot to check
+     * @param ignoreRegions Areas of the page which are expected to change between runs
+     * @return Result of the comparison
+     */
+    public ComparisonResult compare(Baseline baseline, BufferedImage actual, List<Rectangle> ignoreRegions) {
+
+        int width = baseline.getWidth();
+        int height = baseline.getHeight();
+
+        if (actual.getWidth() != width || actual.getHeight() != height) {
+            return ComparisonResult.sizeMismatch(width, height, actual.getWidth(), actual.getHeight());
+        }
+
+        int[] actualPixels = toRgbPixels(actual);
+        TileGrid grid = new TileGrid(width, height, ignoreRegions);
+
+        AtomicLong mismatchedPixels = new AtomicLong();
+        ConcurrentLinkedQueue<Integer> changedTiles = new ConcurrentLinkedQueue<>();
+
+        ForkJoinPool.commonPool().invoke(new CompareTiles(baseline, actualPixels, grid, 0, grid.tileCount,
+                mismatchedPixels, changedTiles));
+
+        List<Integer> changed = new ArrayList<>(changedTiles);
+        Collections.sort(changed);
+
+        return new ComparisonResult(width, height, mismatchedPixels.get(), grid.comparedPixels(), changed.size(),
+                () -> createDiffImage(baseline, actualPixels, grid, changed));
+    }
+
+    /**
+     * Get the pixels of an image as packed RGB ints, without copying if the image is already in that format
+     */
+    static int[] toRgbPixels(BufferedImage image) {
+
+        if (image.getType() != BufferedImage.TYPE_INT_RGB) {
+            BufferedImage converted = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = converted.createGraphics();
+
+            try {
+                graphics.drawImage(image, 0, 0, null);
+            }
+            finally {
+                graphics.dispose();
+            }
+
+            image = converted;
+        }
+
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * Hash every tile of an image, as kept with a baseline
+     */
+    static long[] hashTiles(int[] pixels, TileGrid grid) {
+
+        long[] hashes = new long[grid.tileCount];
+
+        for (int tile = 0; tile < hashes.length; tile++) {
+            hashes[tile] = hashTile(pixels, grid.width, grid.tileX(tile), grid.tileY(tile), grid.tileEndX(tile),
+                    grid.tileEndY(tile));
+        }
+
+        return hashes;
+    }
+
+    /**
+     * Hash the pixels in a single tile
+     */
+    static long hashTile(int[] pixels, int width, int x0, int y0, int x1, int y1) {
+
+        long hash = 0xcbf29ce484222325L;
+
+        for (int y = y0; y < y1; y++) {
+            int row = y * width;
+
+            for (int x = x0; x < x1; x++) {
+                hash = (hash ^ pixels[row + x]) * 0x100000001b3L;
+            }
+        }
+
+        return hash;
+    }
+
+    private boolean pixelsMatch(int expected, int actual) {
+
+        if (expected == actual) {
+            return true;
+        }
+
+        return Math.abs(((expected >> 16) & 0xFF) - ((actual >> 16) & 0xFF)) <= channelTolerance
+                && Math.abs(((expected >> 8) & 0xFF) - ((actual >> 8) & 0xFF)) <= channelTolerance
+                && Math.abs((expected & 0xFF) - (actual & 0xFF)) <= channelTolerance;
+    }
+
+    /**
+     * Count the pixels in a tile which don't match the baseline
+     */
+    private long compareTile(Baseline baseline, int[] actualPixels, TileGrid grid, int tile) {
+
+        int x0 = grid.tileX(tile);
+        int y0 = grid.tileY(tile);
+        int x1 = grid.tileEndX(tile);
+        int y1 = grid.tileEndY(tile);
+
+        List<Rectangle> ignored = grid.ignoredIn(tile);
+
+        // Quick check first, nearly every tile is identical on a passing test
+        if (ignored.isEmpty() && hashTile(actualPixels, grid.width, x0, y0, x1, y1) == baseline.getTileHash(tile)) {
+            return 0;
+        }
+
+        int[] expectedPixels = baseline.getPixels();
+        long mismatched = 0;
+
+        for (int y = y0; y < y1; y++) {
+            int row = y * grid.width;
+
+            for (int x = x0; x < x1; x++) {
+                if (!pixelsMatch(expectedPixels[row + x], actualPixels[row + x]) && !isIgnored(ignored, x, y)) {
+                    mismatched++;
+                }
+            }
+        }
+
+        return mismatched;
+    }
+
+    private static boolean isIgnored(List<Rectangle> ignored, int x, int y) {
+
+        for (Rectangle region : ignored) {
+            if (region.contains(x, y)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Draw the screenshot with any changed pixels highlighted, and ignored regions greyed out
+     */
+    private BufferedImage createDiffImage(Baseline baseline, int[] actualPixels, TileGrid grid, List<Integer> changedTiles) {
+
+        BufferedImage diff = new BufferedImage(grid.width, grid.height, BufferedImage.TYPE_INT_RGB);
+        int[] diffPixels = ((DataBufferInt) diff.getRaster().getDataBuffer()).getData();
+        System.arraycopy(actualPixels, 0, diffPixels, 0, actualPixels.length);
+
+        int[] expectedPixels = baseline.getPixels();
+
+        for (int tile : changedTiles) {
+            int x0 = grid.tileX(tile);
+            int y0 = grid.tileY(tile);
+            List<Rectangle> ignored = grid.ignoredIn(tile);
+
+            for (int y = y0; y < grid.tileEndY(tile); y++) {
+                for (int x = x0; x < grid.tileEndX(tile); x++) {
+                    int i = y * grid.width + x;
+
+                    if (!pixelsMatch(expectedPixels[i], actualPixels[i]) && !isIgnored(ignored, x, y)) {
+                        diffPixels[i] = DIFF_COLOUR;
+                    }
+                }
+            }
+        }
+
+        for (Rectangle region : grid.ignoreRegions) {
+            Rectangle clipped = region.intersection(new Rectangle(0, 0, grid.width, grid.height));
+
+            for (int y = clipped.y; y < clipped.y + clipped.height; y++) {
+                for (int x = clipped.x; x < clipped.x + clipped.width; x++) {
+                    diffPixels[y * grid.width + x] = IGNORED_COLOUR;
+                }
+            }
+        }
+
+        return diff;
+    }
+
+    /**
+     * Fork/join task which compares a range of tiles, splitting itself in half until the range is small enough
+     */
+    private class CompareTiles extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Baseline baseline;
+        private final int[] actualPixels;
+        private final TileGrid grid;
+        private final int fromTile;
+        private final int toTile;
+        private final AtomicLong mismatchedPixels;
+        private final ConcurrentLinkedQueue<Integer> changedTiles;
+
+        private CompareTiles(Baseline baseline, int[] actualPixels, TileGrid grid, int fromTile, int toTile,
+                             AtomicLong mismatchedPixels, ConcurrentLinkedQueue<Integer> changedTiles) {
+            this.baseline = baseline;
+            this.actualPixels = actualPixels;
+            this.grid = grid;
+            this.fromTile = fromTile;
+            this.toTile = toTile;
+            this.mismatchedPixels = mismatchedPixels;
+            this.changedTiles = changedTiles;
+        }
+
+        @Override
+        protected void compute() {
+
+            if (toTile - fromTile > TILES_PER_TASK) {
+                int middle = (fromTile + toTile) >>> 1;
+                invokeAll(new CompareTiles(baseline, actualPixels, grid, fromTile, middle, mismatchedPixels, changedTiles),
+                        new CompareTiles(baseline, actualPixels, grid, middle, toTile, mismatchedPixels, changedTiles));
+                return;
+            }
+
+            long mismatched = 0;
+
+            for (int tile = fromTile; tile < toTile; tile++) {
+                long tileMismatches = compareTile(baseline, actualPixels, grid, tile);
+
+                if (tileMismatches > 0) {
+                    mismatched += tileMismatches;
+                    changedTiles.add(tile);
+                }
+            }
+
+            if (mismatched > 0) {
+                mismatchedPixels.addAndGet(mismatched);
+            }
+        }
+    }
+
+    /**
+     * Layout of the tiles for an image, and which ignore regions fall in each tile
+     */
+    static class TileGrid {
+
+        private final int width;
+        private final int height;
+        private final int columns;
+        private final int tileCount;
+        private final List<Rectangle> ignoreRegions;
+        private final List<List<Rectangle>> ignoredByTile;
+
+        TileGrid(int width, int height, List<Rectangle> ignoreRegions) {
+            this.width = width;
+            this.height = height;
+            this.columns = (width + TILE_SIZE - 1) / TILE_SIZE;
+            this.tileCount = columns * ((height + TILE_SIZE - 1) / TILE_SIZE);
+            this.ignoreRegions = ignoreRegions == null ? Collections.emptyList() : ignoreRegions;
+
+            ignoredByTile = new ArrayList<>(tileCount);
+
+            for (int tile = 0; tile < tileCount; tile++) {
+                Rectangle tileBounds = new Rectangle(tileX(tile), tileY(tile), TILE_SIZE, TILE_SIZE);
+                List<Rectangle> ignored = Collections.emptyList();
+
+                for (Rectangle region : this.ignoreRegions) {
+                    if (region.intersects(tileBounds)) {
+                        if (ignored.isEmpty()) {
+                            ignored = new ArrayList<>();
+                        }
+                        ignored.add(region);
+                    }
+                }
+
+                ignoredByTile.add(ignored);
+            }
+        }
+
+        int tileCount() {
+            return tileCount;
+        }
+
+        int tileX(int tile) {
+            return (tile % columns) * TILE_SIZE;
+        }
+
+        int tileY(int tile) {
+            return (tile / columns) * TILE_SIZE;
+        }
+
+        /**
+         * @return X coordinate just past the right edge of the tile, as tiles on the right edge may be narrower
+         */
+        int tileEndX(int tile) {
+            return Math.min(tileX(tile) + TILE_SIZE, width);
+        }
+
+        /**
+         * @return Y coordinate just past the bottom edge of the tile, as tiles on the bottom edge may be shorter
+         */
+        int tileEndY(int tile) {
+            return Math.min(tileY(tile) + TILE_SIZE, height);
+        }
+
+        List<Rectangle> ignoredIn(int tile) {
+            return ignoredByTile.get(tile);
+        }
+
+        long comparedPixels() {
+            long ignored = 0;
+            Rectangle bounds = new Rectangle(0, 0, width, height);
+
+            // Overlapping ignore regions make this approximate, which is fine for reporting a ratio
+            for (Rectangle region : ignoreRegions) {
+                Rectangle clipped = region.intersection(bounds);
+
+                if (!clipped.isEmpty()) {
+                    ignored += (long) clipped.width * clipped.height;
+                }
+            }
+
+            return Math.max(0, (long) width * height - ignored);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package framework.visual;
+
+import framework.DriverWrapper;
+import framework.ScreenshotService;
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebElement;
+
+import javax.imageio.ImageIO;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the current state of the browser window against a stored baseline image.
+ *
+ * If there's no baseline yet, or the framework.updateBaselines system property is set, the screenshot is saved as the
+ * new baseline and the check passes.  When a check fails a diff image is written to the screenshot folder in the
+ * background, with the changed pixels in red.
+ *
+ * The per channel tolerance for each pixel can be set with framework.visualTolerance (defaults to 8), and the number of
+ * changed pixels allowed before a check fails with framework.visualMaxMismatchedPixels (defaults to 0).
+ */
+public class VisualCheck {
+
+    private static final ImageComparator comparator = new ImageComparator(Integer.getInteger("framework.visualTolerance", 8));
+
+    private VisualCheck() {
+
+    }
+
+    /**
+     * Compare the browser window against a baseline
+     * @param driver Driver to take the screenshot with
+     * @param baselineName Name of the baseline image without file extension
+     * @param ignoreElements Elements which change between runs and should be left out of the comparison.  Any which
+     *                       aren't on the page are skipped.
+     * @return Result of the comparison
+     */
+    public static ComparisonResult compareWithBaseline(DriverWrapper driver, String baselineName, By... ignoreElements) {
+
+        List<Rectangle> ignoreRegions = findRegions(driver, ignoreElements);
+        byte[] png = driver.getScreenShotBytes();
+        BufferedImage actual = decode(png);
+
+        BaselineStore store = BaselineStore.forConfiguredFolder();
+        Baseline baseline = Boolean.parseBoolean(System.getProperty("framework.updateBaselines")) ? null : store.get(baselineName);
+
+        if (baseline == null) {
+            System.out.println("Saving new baseline image '" + baselineName + "'");
+            baseline = store.save(baselineName, png, actual);
+        }
+
+        ComparisonResult result = comparator.compare(baseline, actual, ignoreRegions);
+
+        if (!result.matches(Long.getLong("framework.visualMaxMismatchedPixels", 0)) && !result.isSizeMismatch()) {
+            ScreenshotService.save(result.getDiffImage(), baselineName + "-diff");
+        }
+
+        return result;
+    }
+
+    /**
+     * Get the areas of the screenshot covered by the supplied elements.  The screenshot only shows the part of the page
+     * in the window, so positions are taken relative to that rather than the whole document.  They're in CSS pixels,
+     * so they have to be scaled up on high density displays.
+     */
+    private static List<Rectangle> findRegions(DriverWrapper driver, By... elements) {
+
+        List<Rectangle> regions = new ArrayList<>();
+
+        if (elements.length == 0) {
+            return regions;
+        }
+
+        List<WebElement> found = new ArrayList<>();
+
+        for (By locator : elements) {
+            found.addAll(driver.findElements(locator));
+        }
+
+        double scale = driver.getDevicePixelRatio();
+
+        for (double[] bounds : driver.getViewportBounds(found)) {
+            int x = (int) Math.floor(bounds[0] * scale);
+            int y = (int) Math.floor(bounds[1] * scale);
+
+            // Round the far edges outwards too, so a region never stops short of the element
+            regions.add(new Rectangle(x, y, (int) Math.ceil((bounds[0] + bounds[2]) * scale) - x,
+                    (int) Math.ceil((bounds[1] + bounds[3]) * scale) - y));
+        }
+
+        return regions;
+    }
+
+    private static BufferedImage decode(byte[] png) {
+
+        try {
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+
+            if (image == null) {
+                throw new IllegalStateException("Screenshot is not a valid image");
+            }
+
+            return image;
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Unable to read screenshot", e);
+        }
+    }
+}
@@ -1,6 +1,6 @@
 package models;
 
-import framework.Util;
+import framework.TestDataGenerator;
 
 /**
  * This class models a user and should contain all of the information needed to create one in the application under test
@@ -27,7 +27,7 @@ public class User {
     }
 
     public static User createNewRandomUser() {
-        return new User(Util.getRandomStringOfLength(8), Util.getRandomStringOfLength(8), Util.getValidEmail(), Util.getRandomStringOfLength(8), String.valueOf(Util.getRandomNumberOfLength(11)), Util.getRandomStringOfLength(8));
+        return TestDataGenerator.current().user();
     }
 
     public String getFirstName() {
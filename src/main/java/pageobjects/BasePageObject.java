@@ -3,6 +3,8 @@ package pageobjects;
 import framework.DriverWrapper;
 import framework.ConfigManager;
 import framework.enums.SupportedBrowsers;
+import framework.visual.ComparisonResult;
+import framework.visual.VisualCheck;
 import org.openqa.selenium.*;
 
 /**
@@ -16,9 +18,13 @@ public class BasePageObject {
 
     protected By browserError = By.cssSelector("browser:error");
 
+    // Parts of the page which change from run to run, i.e. timestamps or adverts, and are left out of visual checks.
+    // Page objects should add their own.
+    protected By[] visualIgnoreElements = {};
+
     protected BasePageObject() {
 
-        props = new ConfigManager();
+        props = ConfigManager.get();
         BASE_URL = props.getBaseURL();
     }
 
@@ -30,6 +36,9 @@ public class BasePageObject {
      */
     protected void selfCheckPageTitleContains(String[] pageTitles) {
 
+        // Page objects all check they're on the right page as they start, so this is where we know which page we're on
+        driver.setCurrentPage(getClass().getSimpleName());
+
         try {
             driver.waitFor.pageTitleToContain(pageTitles, 5L);
         }
@@ -50,11 +59,30 @@ public class BasePageObject {
      * @param url Full or partial URL to check against the current URL
      */
     protected void selfCheckPageURLContains(String url) {
+        driver.setCurrentPage(getClass().getSimpleName());
+
         if (! driver.urlContains(url)) {
             throw new IllegalStateException("Page url does not match");
         }
     }
 
+    /**
+     * Compares the page against its baseline image, ignoring any of the visualIgnoreElements.  Baselines are kept per
+     * page object, state and browser, and the first run for each saves a new one.
+     * @param state Name for what the page is showing, i.e. "empty" or "with errors"
+     */
+    public void checkPageMatchesBaseline(String state) {
+
+        String baselineName = getClass().getSimpleName() + "-" + state.replaceAll("[^A-Za-z0-9]+", "_") + "-"
+                + driver.getDriverBrowser().toString().toLowerCase();
+
+        ComparisonResult result = VisualCheck.compareWithBaseline(driver, baselineName, visualIgnoreElements);
+
+        if (!result.matches(Long.getLong("framework.visualMaxMismatchedPixels", 0))) {
+            throw new IllegalStateException("Page does not match baseline '" + baselineName + "'\n" + result);
+        }
+    }
+
     /**
      * Returns the number of form fields failing the browsers validation checks
      * @return Number of form fields with errors
@@ -67,6 +67,7 @@ public class LoginPage extends BasePageObject {
     }
 
     public String getMessageText() {
-        return ((driver.findElements(messageBox).size() > 0) ? driver.findElement(messageBox).getText() : "");
+        String message = driver.batch().readText("message", messageBox).execute().getString("message");
+        return message == null ? "" : message;
     }
 }
@@ -1,6 +1,8 @@
 package pageobjects;
 
 import framework.DriverWrapper;
+import framework.SessionCache;
+import models.User;
 import org.openqa.selenium.By;
 
 public class SecureArea extends BasePageObject {
@@ -11,6 +13,20 @@ public class SecureArea extends BasePageObject {
     protected final By logoutbutton = By.className("icon-signout");
     protected final By messageBox = By.id("flash");
 
+    /**
+     * Constructor used by tests which just need to be logged in.  The user's cached session is restored rather than
+     * logging in through the login page, which is only used if the session can't be obtained through the API.
+     * @param wrapper DriverWrapper instance to load this page in
+     * @param user User to log in as
+     */
+    public SecureArea(DriverWrapper wrapper, User user) {
+        this.driver = wrapper;
+        SessionCache.restore(driver, user, PAGE_URL,
+                (loginDriver, loginUser) -> new LoginPage(loginDriver).enterUserDetails(loginUser).loginExpectingSuccess());
+        driver.waitFor.elementToBePresent(logoutbutton);
+        selfCheckPageTitleContains(PAGE_TITLE);
+    }
+
     /**
      * Constructor used by other page objects as we navigate around a site
      * @param wrapper WebDriver instance which should already be on this page
@@ -22,6 +38,7 @@ public class SecureArea extends BasePageObject {
     }
 
     public String getMessageText() {
-        return ((driver.findElements(messageBox).size() > 0) ? driver.findElement(messageBox).getText() : "");
+        String message = driver.batch().readText("message", messageBox).execute().getString("message");
+        return message == null ? "" : message;
     }
 }
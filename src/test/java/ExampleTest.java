@@ -1,30 +1,38 @@
+import com.sun.net.httpserver.HttpServer;
 import framework.*;
 import framework.enums.SupportedBrowsers;
 import framework.enums.TestAccounts;
+import framework.load.LoadTestReport;
+import framework.load.LoadTestRunner;
 import models.User;
 import org.openqa.selenium.logging.LogEntry;
-import org.testng.ITestResult;
-import org.testng.annotations.AfterClass;
-import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Listeners;
 import org.testng.annotations.Test;
 import pageobjects.*;
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Level;
 
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertTrue;
 
+// Drivers are tracked per test by the framework, so the listener can take screenshots and shut them down for us.  This
+// means the tests are safe to run with parallel="methods"
+@Listeners(DriverContextListener.class)
 public class ExampleTest {
 
-    private DriverWrapper driver;
-
     // Example tests using an explicitly defined, local browser
     @Test(retryAnalyzer = RetryOnFail.class)
     public void passwordReset() {
 
-        driver = DriverFactory.createLocalDriver(SupportedBrowsers.CHROME_HEADLESS);
+        DriverWrapper driver = DriverFactory.createLocalDriver(SupportedBrowsers.CHROME_HEADLESS);
 
         String confirmMessage = "Your e-mail's been sent!";
 
@@ -40,7 +48,7 @@ public class ExampleTest {
     @Test(retryAnalyzer = RetryOnFail.class)
     public void invalidUsername() {
 
-        driver = DriverFactory.createLocalDriver(SupportedBrowsers.CHROME_HEADLESS);
+        DriverWrapper driver = DriverFactory.createLocalDriver(SupportedBrowsers.CHROME_HEADLESS);
 
         String errorMessage = "Your username is invalid!";
 
@@ -57,7 +65,7 @@ public class ExampleTest {
     @Test(retryAnalyzer = RetryOnFail.class)
     public void validLogin() {
 
-        driver = DriverFactory.createDriverFromSystemProperties();
+        DriverWrapper driver = DriverFactory.createDriverFromSystemProperties();
 
         String loggedInMessage = "You logged into a secure area!";
 
@@ -70,11 +78,22 @@ public class ExampleTest {
         assertTrue(secure.getMessageText().contains(loggedInMessage));
     }
 
+    // Example test which needs to be logged in but isn't testing the login itself, so reuses a cached session
+    @Test(retryAnalyzer = RetryOnFail.class)
+    public void cachedLogin() {
+
+        DriverWrapper driver = DriverFactory.createDriverFromSystemProperties();
+
+        SecureArea secure = new SecureArea(driver, TestAccounts.CUSTOMER.getUser());
+
+        assertTrue(driver.urlContains(secure.PAGE_URL));
+    }
+
     // Example tests using the Rest API helper instead of a browser
     @Test(retryAnalyzer = RetryOnFail.class)
     public void getRequest() {
 
-        ConfigManager props = new ConfigManager();
+        ConfigManager props = ConfigManager.get();
         String endpoint = props.getBaseURL() + "status_codes/404";
 
         RestAPIHelper api = new RestAPIHelper(endpoint);
@@ -86,7 +105,7 @@ public class ExampleTest {
     @Test(retryAnalyzer = RetryOnFail.class)
     public void postRequest() {
 
-        ConfigManager props = new ConfigManager();
+        ConfigManager props = ConfigManager.get();
         String endpoint = props.getBaseURL() + "authenticate";
 
         User testUser = TestAccounts.CUSTOMER.getUser();
@@ -101,12 +120,55 @@ public class ExampleTest {
         assertTrue(api.getResponseBody().contains("You logged into a secure area!"));
     }
 
+    // Example load test re-using an API request, run against a local stand-in server so it doesn't need the internet
+    @Test
+    public void loadTest() throws IOException {
+
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newFixedThreadPool(8));
+        server.createContext("/authenticate", exchange -> {
+            byte[] body = "You logged into a secure area!".getBytes();
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+
+        try {
+            User testUser = TestAccounts.CUSTOMER.getUser();
+
+            RestRequest login = RestRequest.post("http://127.0.0.1:" + server.getAddress().getPort() + "/authenticate")
+                    .header("Content-Type", "application/x-www-form-urlencoded")
+                    .body("username=" + testUser.getUsername() + "&password=" + testUser.getPassword())
+                    .build();
+
+            LoadTestReport report = LoadTestRunner.scenario("authenticate")
+                    .step("login", login)
+                    .atRate(100)
+                    .withWarmup(Duration.ofSeconds(1))
+                    .forDuration(Duration.ofSeconds(3))
+                    .run();
+
+            report.writeJSON(Paths.get("target", "load-reports", "authenticate.json"));
+            System.out.println(report);
+
+            assertEquals(report.getErrorCount(), 0);
+            assertEquals(report.getStatusCodes().get(200).longValue(), report.getCompletedScenarios());
+            // Every run scheduled after the warmup is waited for, however slowly the machine is running
+            assertEquals(report.getCompletedScenarios(), 100 * 3, 3);
+        }
+        finally {
+            server.stop(0);
+            ((ExecutorService) server.getExecutor()).shutdown();
+        }
+    }
+
     @Test(retryAnalyzer = RetryOnFail.class, groups="excludeOnGithub")
     public void emailTest() {
 
         User testUser = User.createNewRandomUser();
 
-        driver = DriverFactory.createDriverFromSystemProperties();
+        DriverWrapper driver = DriverFactory.createDriverFromSystemProperties();
 
         EmailSent reset = new ForgotPassword(driver)
                 .enterEmail(testUser.getEmailAddress())
@@ -125,7 +187,7 @@ public class ExampleTest {
     @Test
     public void getBrowserLogs() {
 
-        driver = DriverFactory.createLocalDriver(SupportedBrowsers.CHROME_HEADLESS);
+        DriverWrapper driver = DriverFactory.createLocalDriver(SupportedBrowsers.CHROME_HEADLESS);
 
         JSError err = new JSError(driver);
 
@@ -138,25 +200,4 @@ public class ExampleTest {
             System.out.println(new Date(entry.getTimestamp()) + " " + entry.getLevel() + " " + entry.getMessage() + " " + entry.toString());
         }
     }
-
-    @AfterMethod
-    public void screenshotOnFail(ITestResult result) {
-        if (driver != null) {
-
-            if (!result.isSuccess()) {
-                driver.takeScreenShot(result.getMethod().getMethodName());
-            }
-
-            driver.shutDown();
-            driver = null;
-        }
-    }
-
-    @AfterClass
-    public void teardown() {
-        if (driver != null) {
-            driver.shutDown();
-            driver = null;
-        }
-    }
 }
\ No newline at end of file
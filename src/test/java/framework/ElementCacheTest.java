@@ -0,0 +1,188 @@
+package framework;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.SearchContext;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.WrapsElement;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertTrue;
+
+public class ElementCacheTest {
+
+    private static final By BUTTON = By.id("button");
+
+    private StubPage page;
+    private ElementCache cache;
+
+    @BeforeMethod
+    public void setUp() {
+        page = new StubPage();
+        cache = new ElementCache(page);
+    }
+
+    /**
+     * Stands in for the browser, counting lookups and handing out a new element each time the "page" is reloaded
+     */
+    private static class StubPage implements SearchContext {
+
+        private final AtomicInteger lookups = new AtomicInteger();
+        private final List<WebElement> current = new ArrayList<>();
+        private int generation;
+
+        private StubPage() {
+            reload();
+        }
+
+        private void reload() {
+            generation++;
+            current.clear();
+            current.add(element("first-" + generation));
+            current.add(element("second-" + generation));
+        }
+
+        private WebElement element(String text) {
+
+            int createdIn = generation;
+
+            return (WebElement) Proxy.newProxyInstance(WebElement.class.getClassLoader(), new Class<?>[] {WebElement.class},
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "equals":
+                                // Like RemoteWebElement, compare against whatever a wrapper holds
+                                Object other = args[0] instanceof WrapsElement ? ((WrapsElement) args[0]).getWrappedElement() : args[0];
+                                return proxy == other;
+                            case "hashCode":
+                                return System.identityHashCode(proxy);
+                            case "toString":
+                                return text;
+                            default:
+                                if (createdIn != generation) {
+                                    throw new StaleElementReferenceException(text + " is stale");
+                                }
+
+                                return method.getName().equals("getText") ? text : null;
+                        }
+                    });
+        }
+
+        @Override
+        public List<WebElement> findElements(By by) {
+            lookups.incrementAndGet();
+            return new ArrayList<>(current);
+        }
+
+        @Override
+        public WebElement findElement(By by) {
+            lookups.incrementAndGet();
+            return current.get(0);
+        }
+    }
+
+    @Test
+    public void repeatLookupsAreServedFromCache() {
+
+        cache.findElement(BUTTON);
+        cache.findElement(BUTTON);
+        cache.findElement(BUTTON);
+
+        assertEquals(page.lookups.get(), 1);
+        assertEquals(cache.getLookups(), 3);
+        assertEquals(cache.getRoundTripsSaved(), 2);
+    }
+
+    @Test
+    public void staleElementsAreFoundAgain() {
+
+        WebElement button = cache.findElement(BUTTON);
+        page.reload();
+
+        assertEquals(button.getText(), "first-2");
+        assertEquals(cache.getStaleRefinds(), 1);
+        assertEquals(page.lookups.get(), 2);
+
+        // The fresh handle is kept, so it's not found again next time
+        assertEquals(cache.findElement(BUTTON).getText(), "first-2");
+        assertEquals(page.lookups.get(), 2);
+    }
+
+    @Test
+    public void clickClearsCache() {
+
+        cache.findElement(BUTTON).click();
+        page.reload();
+
+        assertEquals(cache.findElement(BUTTON).getText(), "first-2");
+        assertEquals(cache.getStaleRefinds(), 0);
+        assertEquals(page.lookups.get(), 2);
+    }
+
+    @Test
+    public void submitClearsCache() {
+
+        cache.findElement(BUTTON).submit();
+        cache.findElement(BUTTON);
+
+        assertEquals(page.lookups.get(), 2);
+    }
+
+    @Test
+    public void findElementsAlwaysAsksBrowser() {
+
+        List<WebElement> first = cache.findElements(BUTTON);
+        page.reload();
+        List<WebElement> second = cache.findElements(BUTTON);
+
+        assertEquals(page.lookups.get(), 2);
+        assertEquals(first.size(), 2);
+        assertEquals(second.get(1).getText(), "second-2");
+
+        // The first element found is remembered for findElement
+        assertEquals(cache.findElement(BUTTON).getText(), "first-2");
+        assertEquals(page.lookups.get(), 2);
+    }
+
+    @Test
+    public void clearForgetsElements() {
+
+        cache.findElement(BUTTON);
+        cache.clear();
+        cache.findElement(BUTTON);
+
+        assertEquals(page.lookups.get(), 2);
+    }
+
+    @Test
+    public void resetStartsStatsAgain() {
+
+        cache.findElement(BUTTON);
+        cache.findElement(BUTTON);
+        cache.reset();
+
+        assertEquals(cache.getLookups(), 0);
+        assertEquals(cache.getRoundTripsSaved(), 0);
+    }
+
+    @Test
+    public void cachedElementsEqualTheElementTheyWrap() {
+
+        WebElement cached = cache.findElement(BUTTON);
+        WebElement raw = page.current.get(0);
+
+        assertEquals(cached, raw);
+        assertEquals(cached.hashCode(), raw.hashCode());
+        assertEquals(cached, new CachedElement(cache, BUTTON, raw));
+        assertNotEquals(cached, page.current.get(1));
+        assertTrue(Arrays.asList(raw).contains(cached));
+    }
+}
@@ -0,0 +1,106 @@
+package framework;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertTrue;
+
+public class TOTPHelperTest {
+
+    // The ASCII secret "12345678901234567890" from RFC 6238, in Base32
+    private static final String RFC_SECRET = "GEZDGNBVGY3TQOJQGEZDGNBVGY3TQOJQ";
+
+    private static final long WINDOW_MILLIS = 30_000;
+
+    private static Clock fixedAt(long epochMillis) {
+        return Clock.fixed(Instant.ofEpochMilli(epochMillis), ZoneOffset.UTC);
+    }
+
+    /**
+     * Real clock moved so the current window has the given time left to run
+     */
+    private static Clock withRemaining(Duration remaining) {
+        long now = System.currentTimeMillis();
+        long windowEnd = (now / WINDOW_MILLIS + 1) * WINDOW_MILLIS;
+        return Clock.offset(Clock.systemUTC(), Duration.ofMillis(windowEnd - remaining.toMillis() - now));
+    }
+
+    private static String codeFor(String secret, long window) {
+        return new TOTPHelper(secret, fixedAt(window * WINDOW_MILLIS)).getCurrentOTP();
+    }
+
+    /**
+     * SHA-1 test vectors from RFC 6238 appendix B, cut down to the last 6 of the 8 digits
+     */
+    @DataProvider
+    public Object[][] rfcVectors() {
+        return new Object[][] {
+                {59L, "287082"},
+                {1111111109L, "081804"},
+                {1111111111L, "050471"},
+                {1234567890L, "005924"},
+                {2000000000L, "279037"},
+                {20000000000L, "353130"}
+        };
+    }
+
+    @Test(dataProvider = "rfcVectors")
+    public void matchesRfcVectors(long epochSeconds, String expected) {
+        assertEquals(new TOTPHelper(RFC_SECRET, fixedAt(epochSeconds * 1000)).getCurrentOTP(), expected);
+    }
+
+    @Test
+    public void nextCodeIsForFollowingWindow() {
+        assertEquals(new TOTPHelper(RFC_SECRET, fixedAt(29_000)).getNextOTP(), "287082");
+    }
+
+    @Test
+    public void codeWithEnoughValidityIsForCurrentWindow() {
+
+        String secret = "JBSWY3DPEHPK3PXP";
+        Clock clock = withRemaining(Duration.ofSeconds(10));
+
+        assertEquals(new TOTPHelper(secret, clock).getOTP(Duration.ofSeconds(1)),
+                codeFor(secret, clock.millis() / WINDOW_MILLIS));
+    }
+
+    @Test
+    public void waitsForNextWindowWhenTooLittleValidityLeft() {
+
+        String secret = "KRSXG5CTMVRXEZLU";
+        Clock clock = withRemaining(Duration.ofMillis(500));
+        long window = clock.millis() / WINDOW_MILLIS;
+
+        String code = new TOTPHelper(secret, clock).getOTP(Duration.ofSeconds(5));
+
+        assertEquals(code, codeFor(secret, window + 1));
+        assertTrue(clock.millis() >= (window + 1) * WINDOW_MILLIS, "Returned before the next window started");
+    }
+
+    @Test
+    public void doesNotIssueSameWindowTwice() {
+
+        String secret = "MFRGGZDFMZTWQ2LK";
+        Clock clock = withRemaining(Duration.ofMillis(1500));
+        long window = clock.millis() / WINDOW_MILLIS;
+
+        String first = new TOTPHelper(secret, clock).getOTP(Duration.ofSeconds(1));
+        String second = new TOTPHelper(secret, clock).getOTP(Duration.ofSeconds(1));
+
+        assertEquals(first, codeFor(secret, window));
+        assertEquals(second, codeFor(secret, window + 1));
+        assertNotEquals(first, second);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void rejectsValidityLongerThanWindow() {
+        new TOTPHelper(RFC_SECRET).getOTP(Duration.ofSeconds(30));
+    }
+}
@@ -0,0 +1,43 @@
+package framework;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TestHistoryTest {
+
+    private static boolean isFlaky(String recent) {
+        return TestHistory.isFlaky(TestHistory.flakiness(recent));
+    }
+
+    @Test
+    public void newFailureIsNotFlaky() {
+        assertEquals(TestHistory.flakiness("PPPPF"), 0.0);
+        assertFalse(isFlaky("PPPPF"));
+    }
+
+    @Test
+    public void failingThenFixedIsNotFlaky() {
+        assertFalse(isFlaky("PPPPPFFFFF"));
+        assertFalse(isFlaky("FFFFFPPPPP"));
+    }
+
+    @Test
+    public void alternatingIsFlaky() {
+        assertEquals(TestHistory.flakiness("PFPFP"), 0.6);
+        assertTrue(isFlaky("PPFPPPPFPP"));
+    }
+
+    @Test
+    public void passingAfterRetryIsFlaky() {
+        assertEquals(TestHistory.flakiness("RPPRP"), 0.4);
+        assertTrue(isFlaky("RPPRP"));
+    }
+
+    @Test
+    public void notEnoughRunsToTell() {
+        assertEquals(TestHistory.flakiness("FPF"), 0.0);
+    }
+}
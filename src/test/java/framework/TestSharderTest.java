@@ -0,0 +1,146 @@
+package framework;
+
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertTrue;
+
+public class TestSharderTest {
+
+    private static Map<String, Long> durations(Object... namesAndDurations) {
+
+        Map<String, Long> durations = new LinkedHashMap<>();
+
+        for (int x = 0; x < namesAndDurations.length; x += 2) {
+            durations.put((String) namesAndDurations[x], ((Number) namesAndDurations[x + 1]).longValue());
+        }
+
+        return durations;
+    }
+
+    private static List<Set<String>> assignAll(Map<String, Long> durations, int shardCount) {
+
+        List<Set<String>> shards = new ArrayList<>();
+
+        for (int x = 0; x < shardCount; x++) {
+            shards.add(TestSharder.assign(durations, x, new long[shardCount]));
+        }
+
+        return shards;
+    }
+
+    @Test
+    public void packsLongestFirstIntoLeastLoadedShard() {
+
+        long[] load = new long[2];
+        Set<String> first = TestSharder.assign(durations("a", 10, "b", 9, "c", 8, "d", 3, "e", 2, "f", 1), 0, load);
+
+        // a and b start the two shards, c joins b, then d, e and f all go to a's shard as it stays the lighter one
+        assertEquals(first, new HashSet<>(Arrays.asList("a", "d", "e", "f")));
+        assertEquals(load, new long[] {16, 17});
+    }
+
+    @Test
+    public void everyTestIsInExactlyOneShard() {
+
+        Map<String, Long> durations = new LinkedHashMap<>();
+
+        for (int x = 0; x < 50; x++) {
+            durations.put("test" + x, (long) (x * 37 % 11) * 100);
+        }
+
+        Set<String> seen = new HashSet<>();
+
+        for (Set<String> shard : assignAll(durations, 4)) {
+            for (String test : shard) {
+                assertTrue(seen.add(test), test + " is in more than one shard");
+            }
+        }
+
+        assertEquals(seen, durations.keySet());
+    }
+
+    @Test
+    public void shardsAgreeWhateverOrderTestsAreListedIn() {
+
+        Map<String, Long> durations = durations("a", 500, "b", 500, "c", 500, "d", 200, "e", 200, "f", -1, "g", 0);
+
+        List<String> names = new ArrayList<>(durations.keySet());
+        Collections.reverse(names);
+        Map<String, Long> reversed = new LinkedHashMap<>();
+        names.forEach(name -> reversed.put(name, durations.get(name)));
+
+        assertEquals(assignAll(reversed, 3), assignAll(durations, 3));
+
+        long[] firstLoad = new long[3];
+        TestSharder.assign(durations, 0, firstLoad);
+
+        for (int x = 1; x < 3; x++) {
+            long[] load = new long[3];
+            TestSharder.assign(durations, x, load);
+            assertEquals(load, firstLoad);
+        }
+    }
+
+    @Test
+    public void untimedTestsCountAsMedian() {
+
+        long[] load = new long[1];
+        TestSharder.assign(durations("a", 100, "b", 10, "c", 30, "d", -1), 0, load);
+
+        assertEquals(load[0], 100 + 10 + 30 + 30);
+    }
+
+    @Test
+    public void testsWithNoHistoryAreSpreadByCount() {
+
+        long[] load = new long[2];
+        Set<String> first = TestSharder.assign(durations("a", -1, "b", -1, "c", -1, "d", -1), 0, load);
+
+        assertEquals(first.size(), 2);
+        assertEquals(load[0], load[1]);
+    }
+
+    @Test
+    public void readsExportedDurations() throws IOException {
+
+        Path file = Files.createTempFile("shard-durations", ".json");
+
+        try {
+            Files.write(file, "{\"a.Test.one\": 1500, \"a.Test.two\": 20}".getBytes(StandardCharsets.UTF_8));
+            assertEquals(TestSharder.readDurations(file), durations("a.Test.one", 1500, "a.Test.two", 20));
+        }
+        finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void missingDurationsFileFails() {
+        TestSharder.readDurations(Paths.get("no-such-shard-durations.json"));
+    }
+
+    @Test
+    public void inputHashOnlyDependsOnDurations() {
+
+        String hash = TestSharder.inputHash(durations("a", 10, "b", 20));
+
+        assertEquals(TestSharder.inputHash(durations("b", 20, "a", 10)), hash);
+        assertNotEquals(TestSharder.inputHash(durations("a", 10, "b", 21)), hash);
+    }
+}
@@ -0,0 +1,133 @@
+package framework.visual;
+
+import org.testng.annotations.Test;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class ImageComparatorTest {
+
+    // Not a multiple of the tile size, so the right and bottom tiles are partial
+    private static final int WIDTH = 150;
+    private static final int HEIGHT = 70;
+
+    private final ImageComparator comparator = new ImageComparator(8);
+
+    private static BufferedImage image(int rgb) {
+
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                image.setRGB(x, y, rgb);
+            }
+        }
+
+        return image;
+    }
+
+    private ComparisonResult compare(BufferedImage expected, BufferedImage actual, List<Rectangle> ignoreRegions) {
+        return comparator.compare(new Baseline(expected), actual, ignoreRegions);
+    }
+
+    @Test
+    public void tilesCoverPartialEdges() {
+
+        ImageComparator.TileGrid grid = new ImageComparator.TileGrid(WIDTH, HEIGHT, null);
+
+        assertEquals(grid.tileCount(), 3 * 2);
+
+        int lastTile = grid.tileCount() - 1;
+        assertEquals(grid.tileX(lastTile), 128);
+        assertEquals(grid.tileY(lastTile), 64);
+        assertEquals(grid.tileEndX(lastTile), WIDTH);
+        assertEquals(grid.tileEndY(lastTile), HEIGHT);
+    }
+
+    @Test
+    public void identicalImagesMatch() {
+
+        ComparisonResult result = compare(image(0x336699), image(0x336699), null);
+
+        assertTrue(result.matches(0));
+        assertEquals(result.getChangedTiles(), 0);
+        assertEquals(result.getComparedPixels(), WIDTH * HEIGHT);
+    }
+
+    @Test
+    public void differencesWithinToleranceMatch() {
+
+        BufferedImage actual = image(0x336699);
+        actual.setRGB(10, 10, 0x3B6E91);
+
+        assertTrue(compare(image(0x336699), actual, null).matches(0));
+    }
+
+    @Test
+    public void differencesBeyondToleranceAreCountedPerTile() {
+
+        BufferedImage actual = image(0x336699);
+        actual.setRGB(10, 10, 0x3C6699);
+        actual.setRGB(WIDTH - 1, HEIGHT - 1, 0x000000);
+        actual.setRGB(WIDTH - 2, HEIGHT - 1, 0x000000);
+
+        ComparisonResult result = compare(image(0x336699), actual, null);
+
+        assertFalse(result.matches(0));
+        assertTrue(result.matches(3));
+        assertEquals(result.getMismatchedPixels(), 3);
+        assertEquals(result.getChangedTiles(), 2);
+    }
+
+    @Test
+    public void ignoredRegionsAreSkipped() {
+
+        BufferedImage actual = image(0x336699);
+        actual.setRGB(100, 20, 0x000000);
+        actual.setRGB(10, 10, 0x000000);
+
+        ComparisonResult result = compare(image(0x336699), actual,
+                Collections.singletonList(new Rectangle(90, 10, 20, 20)));
+
+        assertEquals(result.getMismatchedPixels(), 1);
+        assertEquals(result.getComparedPixels(), WIDTH * HEIGHT - 20 * 20);
+    }
+
+    @Test
+    public void diffHighlightsChangedPixels() {
+
+        BufferedImage actual = image(0x336699);
+        actual.setRGB(70, 65, 0x000000);
+
+        BufferedImage diff = compare(image(0x336699), actual, null).getDiffImage();
+
+        assertEquals(diff.getRGB(70, 65) & 0xFFFFFF, 0xFF0000);
+        assertEquals(diff.getRGB(71, 65) & 0xFFFFFF, 0x336699);
+    }
+
+    @Test
+    public void differentSizesDontMatch() {
+
+        ComparisonResult result = comparator.compare(new Baseline(image(0x336699)),
+                new BufferedImage(WIDTH + 1, HEIGHT, BufferedImage.TYPE_INT_RGB), null);
+
+        assertTrue(result.isSizeMismatch());
+        assertFalse(result.matches(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void otherImageTypesAreConverted() {
+
+        BufferedImage expected = image(0x336699);
+        BufferedImage actual = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_3BYTE_BGR);
+        actual.createGraphics().drawImage(expected, 0, 0, null);
+
+        assertTrue(compare(expected, actual, null).matches(0));
+    }
+}